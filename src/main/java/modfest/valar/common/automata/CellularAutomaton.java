@@ -0,0 +1,358 @@
+package modfest.valar.common.automata;
+
+import java.util.Arrays;
+
+import modfest.valar.common.noise.NoiseGenerator;
+import modfest.valar.common.noise.SectionMask;
+
+/**
+ * Birth/survival cellular automaton run directly on packed bit grids, such as
+ * thresholded noise, for smoothing cave masks. Every cell counts its Moore
+ * neighbours, 8 in 2D and 26 in 3D. A dead cell comes alive if its count is
+ * in the birth set, and a live cell stays alive if its count is in the
+ * survival set.
+ * <p>
+ * Grids are stored one row per long, bit k of a row being the cell at k along
+ * the last axis, and carry a one cell halo on every side so that cells on the
+ * border of a chunk see their neighbours in the next one. A 3D grid of sizeX
+ * by sizeY by sizeZ cells is therefore (sizeX + 2) * (sizeY + 2) rows of
+ * sizeZ + 2 bits, row (x, y) at index x * (sizeY + 2) + y, with x, y and the
+ * bit index all offset by one for the halo. A 2D grid of sizeX by sizeY cells
+ * is sizeX + 2 rows of sizeY + 2 bits. Rows are at most 64 bits, so the last
+ * axis may be at most 62 cells.
+ * <p>
+ * A step counts the neighbours of all the cells in a row at once, keeping the
+ * count in bit-sliced form, one long per binary digit, and adding the
+ * neighbouring rows with carry-save adders. The rule is then applied with a
+ * bit-sliced comparison per run of consecutive counts in the birth and
+ * survival sets.
+ */
+public final class CellularAutomaton
+{
+	/**
+	 * The birth and survival sets as runs of consecutive totals, where the total
+	 * counts the cell itself as well as its neighbours, stored as pairs of first
+	 * and one past the last total.
+	 */
+	private final int[] birth;
+	private final int[] survival;
+
+	/**
+	 * @param birth
+	 *            the neighbour counts at which dead cells come alive, bit n set
+	 *            for a count of n.
+	 * @param survival
+	 *            the neighbour counts at which live cells stay alive, bit n set
+	 *            for a count of n.
+	 */
+	public CellularAutomaton(int birth, int survival)
+	{
+		this.birth = runs(birth);
+		this.survival = runs(survival << 1);
+	}
+
+	private static int[] runs(int totals)
+	{
+		int[] runs = new int[2 * Integer.bitCount(totals)];
+		int count = 0;
+
+		while (totals != 0)
+		{
+			int start = Integer.numberOfTrailingZeros(totals);
+			int end = Integer.numberOfTrailingZeros(~(totals >>> start)) + start;
+
+			runs[count++] = start;
+			runs[count++] = end;
+			totals &= end >= 32 ? 0 : -1 << end;
+		}
+
+		return Arrays.copyOf(runs, count);
+	}
+
+	/**
+	 * @param count
+	 *            the smallest neighbour count.
+	 * @return a set of neighbour counts holding every count from the given one
+	 *         up to 26.
+	 */
+	public static int atLeast(int count)
+	{
+		return count > 26 ? 0 : (-1 >>> 5) & (-1 << Math.max(count, 0));
+	}
+
+	/**
+	 * Runs one step on a 3D grid. Cells in the halo are copied unchanged.
+	 *
+	 * @param in
+	 *            the grid to read.
+	 * @param out
+	 *            the grid to write, which must not be the input.
+	 */
+	public void step(long[] in, long[] out, int sizeX, int sizeY, int sizeZ)
+	{
+		int rowsY = sizeY + 2;
+		long interior = ((1L << sizeZ) - 1L) << 1;
+		int rows = (sizeX + 2) * rowsY;
+
+		// halo rows, then every interior row is overwritten below
+		System.arraycopy(in, 0, out, 0, rows);
+
+		for (int x = 1; x <= sizeX; ++x)
+		{
+			for (int y = 1; y <= sizeY; ++y)
+			{
+				long c0 = 0L, c1 = 0L, c2 = 0L, c3 = 0L, c4 = 0L;
+
+				for (int dx = -1; dx <= 1; ++dx)
+				{
+					int base = (x + dx) * rowsY + y;
+
+					for (int dy = -1; dy <= 1; ++dy)
+					{
+						long row = in[base + dy];
+						long a = row << 1, b = row >>> 1;
+
+						// the row and its neighbours along z, as a two bit sum per cell
+						long s0 = a ^ row ^ b;
+						long s1 = (a & row) | (b & (a ^ row));
+
+						long carry = c0 & s0;
+						c0 ^= s0;
+						long t = c1 ^ s1;
+						long carry1 = (c1 & s1) | (t & carry);
+						c1 = t ^ carry;
+						carry = c2 & carry1;
+						c2 ^= carry1;
+						t = c3 & carry;
+						c3 ^= carry;
+						c4 |= t;
+					}
+				}
+
+				long self = in[x * rowsY + y];
+				long next = (~self & match(this.birth, c0, c1, c2, c3, c4)) | (self & match(this.survival, c0, c1, c2, c3, c4));
+
+				out[x * rowsY + y] = (next & interior) | (self & ~interior);
+			}
+		}
+	}
+
+	/**
+	 * Runs one step on a 2D grid. Cells in the halo are copied unchanged.
+	 *
+	 * @param in
+	 *            the grid to read.
+	 * @param out
+	 *            the grid to write, which must not be the input.
+	 */
+	public void step(long[] in, long[] out, int sizeX, int sizeY)
+	{
+		long interior = ((1L << sizeY) - 1L) << 1;
+
+		out[0] = in[0];
+		out[sizeX + 1] = in[sizeX + 1];
+
+		for (int x = 1; x <= sizeX; ++x)
+		{
+			long c0 = 0L, c1 = 0L, c2 = 0L, c3 = 0L;
+
+			for (int dx = -1; dx <= 1; ++dx)
+			{
+				long row = in[x + dx];
+				long a = row << 1, b = row >>> 1;
+				long s0 = a ^ row ^ b;
+				long s1 = (a & row) | (b & (a ^ row));
+
+				long carry = c0 & s0;
+				c0 ^= s0;
+				long t = c1 ^ s1;
+				long carry1 = (c1 & s1) | (t & carry);
+				c1 = t ^ carry;
+				carry = c2 & carry1;
+				c2 ^= carry1;
+				c3 |= carry;
+			}
+
+			long self = in[x];
+			long next = (~self & match(this.birth, c0, c1, c2, c3, 0L)) | (self & match(this.survival, c0, c1, c2, c3, 0L));
+
+			out[x] = (next & interior) | (self & ~interior);
+		}
+	}
+
+	/**
+	 * Runs several steps on a 3D grid, alternating between the grid and the
+	 * scratch grid, and leaves the result in the grid. The halo is not updated
+	 * between steps, so the border is only exact for one step.
+	 */
+	public void run(long[] grid, long[] scratch, int sizeX, int sizeY, int sizeZ, int steps)
+	{
+		long[] from = grid, to = scratch;
+
+		for (int i = 0; i < steps; ++i)
+		{
+			this.step(from, to, sizeX, sizeY, sizeZ);
+			long[] swap = from;
+			from = to;
+			to = swap;
+		}
+
+		if (from != grid)
+			System.arraycopy(from, 0, grid, 0, (sizeX + 2) * (sizeY + 2));
+	}
+
+	/**
+	 * Runs several steps on a 2D grid, alternating between the grid and the
+	 * scratch grid, and leaves the result in the grid. The halo is not updated
+	 * between steps, so the border is only exact for one step.
+	 */
+	public void run(long[] grid, long[] scratch, int sizeX, int sizeY, int steps)
+	{
+		long[] from = grid, to = scratch;
+
+		for (int i = 0; i < steps; ++i)
+		{
+			this.step(from, to, sizeX, sizeY);
+			long[] swap = from;
+			from = to;
+			to = swap;
+		}
+
+		if (from != grid)
+			System.arraycopy(from, 0, grid, 0, sizeX + 2);
+	}
+
+	/**
+	 * @return the bits where the bit-sliced total falls in one of the runs.
+	 */
+	private static long match(int[] runs, long c0, long c1, long c2, long c3, long c4)
+	{
+		long result = 0L;
+
+		for (int i = 0; i < runs.length; i += 2)
+			result |= atLeast(runs[i], c0, c1, c2, c3, c4) & ~atLeast(runs[i + 1], c0, c1, c2, c3, c4);
+
+		return result;
+	}
+
+	/**
+	 * Compares the bit-sliced total against a constant, from the most
+	 * significant digit down.
+	 *
+	 * @return the bits where the total is at least n.
+	 */
+	private static long atLeast(int n, long c0, long c1, long c2, long c3, long c4)
+	{
+		if (n >= 32)
+			return 0L;
+
+		long greater = 0L, equal = -1L;
+
+		if ((n & 16) != 0) equal &= c4; else { greater |= equal & c4; equal &= ~c4; }
+		if ((n & 8) != 0) equal &= c3; else { greater |= equal & c3; equal &= ~c3; }
+		if ((n & 4) != 0) equal &= c2; else { greater |= equal & c2; equal &= ~c2; }
+		if ((n & 2) != 0) equal &= c1; else { greater |= equal & c1; equal &= ~c1; }
+		if ((n & 1) != 0) equal &= c0; else { greater |= equal & c0; equal &= ~c0; }
+
+		return greater | equal;
+	}
+
+	/**
+	 * Samples where the noise is above the threshold into a 3D grid, including
+	 * its halo. Cell (i, j, k) is sampled at (x + i * stepX, y + j * stepY, z + k
+	 * * stepZ), and the halo one step further out.
+	 *
+	 * @param grid
+	 *            the grid to write, at least (sizeX + 2) * (sizeY + 2) long.
+	 */
+	public static void sample(NoiseGenerator noise, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ, double threshold, long[] grid)
+	{
+		int rows = (sizeX + 2) * (sizeY + 2);
+		int width = sizeZ + 2;
+		double[] buffer = new double[rows * width];
+		int index = 0;
+
+		noise.fill(buffer, x - stepX, y - stepY, z - stepZ, stepX, stepY, stepZ, sizeX + 2, sizeY + 2, width);
+
+		for (int i = 0; i < rows; ++i)
+		{
+			long row = 0L;
+
+			for (int bit = 0; bit < width; ++bit)
+				row |= (buffer[index++] > threshold ? 1L : 0L) << bit;
+
+			grid[i] = row;
+		}
+	}
+
+	/**
+	 * Samples where the noise is above the threshold into a 2D grid, including
+	 * its halo.
+	 *
+	 * @param grid
+	 *            the grid to write, at least sizeX + 2 long.
+	 */
+	public static void sample(NoiseGenerator noise, double x, double y, double stepX, double stepY, int sizeX, int sizeY, double threshold, long[] grid)
+	{
+		int width = sizeY + 2;
+		double[] buffer = new double[(sizeX + 2) * width];
+		int index = 0;
+
+		noise.fill(buffer, x - stepX, y - stepY, stepX, stepY, sizeX + 2, width);
+
+		for (int i = 0; i < sizeX + 2; ++i)
+		{
+			long row = 0L;
+
+			for (int bit = 0; bit < width; ++bit)
+				row |= (buffer[index++] > threshold ? 1L : 0L) << bit;
+
+			grid[i] = row;
+		}
+	}
+
+	/**
+	 * Copies a {@link SectionMask} into the interior of an 18 by 18 by 18 grid,
+	 * leaving the halo as it is.
+	 */
+	public static void fromSection(long[] section, long[] grid)
+	{
+		int size = SectionMask.SIZE;
+		long interior = ((1L << size) - 1L) << 1;
+
+		for (int x = 0; x < size; ++x)
+		{
+			for (int y = 0; y < size; ++y)
+			{
+				int index = (x << 4) | y;
+				long row = (section[index >>> 2] >>> ((index & 3) << 4)) & 0xFFFFL;
+				int r = (x + 1) * (size + 2) + y + 1;
+
+				grid[r] = (grid[r] & ~interior) | (row << 1);
+			}
+		}
+	}
+
+	/**
+	 * Copies the interior of an 18 by 18 by 18 grid into a {@link SectionMask}.
+	 */
+	public static void toSection(long[] grid, long[] section)
+	{
+		int size = SectionMask.SIZE;
+
+		for (int i = 0; i < SectionMask.WORDS; ++i)
+		{
+			long word = 0L;
+
+			for (int k = 0; k < 4; ++k)
+			{
+				int index = (i << 2) | k;
+				int x = index >>> 4, y = index & 15;
+
+				word |= ((grid[(x + 1) * (size + 2) + y + 1] >>> 1) & 0xFFFFL) << (k << 4);
+			}
+
+			section[i] = word;
+		}
+	}
+}
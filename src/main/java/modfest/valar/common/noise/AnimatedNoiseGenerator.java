@@ -0,0 +1,107 @@
+package modfest.valar.common.noise;
+
+/**
+ * Noise that changes smoothly over time, made by using time as an extra axis
+ * of another generator: 2D noise is a moving slice of its 3D noise and 3D
+ * noise a moving slice of its 4D noise. Time advances by a fixed step per
+ * {@link #step()}, and is kept as a count of steps so that it does not drift
+ * however long it runs.
+ * <p>
+ * Instances hold the current time, so are not threadsafe. Advance them from
+ * the thread that samples them.
+ */
+public class AnimatedNoiseGenerator implements NoiseGenerator
+{
+	private final NoiseGenerator parent;
+	private final double start, timeStep;
+
+	private long steps;
+	private double time;
+
+	/**
+	 * @param parent
+	 *            the generator whose 3D and 4D noise is sampled.
+	 * @param start
+	 *            the time at step 0.
+	 * @param timeStep
+	 *            how far each step moves along the time axis, in noise units.
+	 */
+	public AnimatedNoiseGenerator(NoiseGenerator parent, double start, double timeStep)
+	{
+		this.parent = parent;
+		this.start = start;
+		this.timeStep = timeStep;
+		this.time = start;
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.parent.getSeed();
+	}
+
+	public NoiseGenerator getParent()
+	{
+		return this.parent;
+	}
+
+	/**
+	 * @return the current position along the time axis.
+	 */
+	public double getTime()
+	{
+		return this.time;
+	}
+
+	public long getSteps()
+	{
+		return this.steps;
+	}
+
+	/**
+	 * Advances time by one step.
+	 */
+	public void step()
+	{
+		this.setSteps(this.steps + 1);
+	}
+
+	/**
+	 * Moves time to the given number of steps after the start.
+	 */
+	public void setSteps(long steps)
+	{
+		this.steps = steps;
+		this.time = this.start + steps * this.timeStep;
+	}
+
+	@Override
+	public double eval(double x, double y)
+	{
+		return this.parent.eval(x, y, this.time);
+	}
+
+	@Override
+	public double eval(double x, double y, double z)
+	{
+		return this.parent.eval(x, y, z, this.time);
+	}
+
+	/**
+	 * The range of the parent's 3D noise over the box at the current time.
+	 */
+	@Override
+	public void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+	{
+		this.parent.bounds(minX, minY, this.time, maxX, maxY, this.time, out);
+	}
+
+	/**
+	 * Fills a grid of the current slice through the parent's own 3D fill.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		this.parent.fill(buffer, x, y, this.time, stepX, stepY, 0D, sizeX, sizeY, 1);
+	}
+}
@@ -0,0 +1,235 @@
+package modfest.valar.common.noise;
+
+/**
+ * OpenSimplex2F, the fast OpenSimplex2 noise. Every sample adds the few
+ * lattice points closest to it, 3 in 2D, 4 in 3D and 5 in 4D, with a falloff
+ * radius small enough that no other point reaches it. This is cheaper than
+ * {@link OpenSimplexNoise}, which visits up to 8 points in 3D and 13 in 4D,
+ * at the cost of slightly less smooth noise.
+ */
+public class FastOpenSimplex2Noise extends OpenSimplex2Noise
+{
+	// The reference uses 0.6 in 3D and 4D, which lets points beyond the ones visited reach a
+	// sample and leaves small steps in the noise. 0.5 keeps it continuous.
+	private static final double RSQUARED_2D = 0.5;
+	private static final double RSQUARED_3D = 0.5;
+	private static final double RSQUARED_4D = 0.5;
+
+	// Scale the output to about [-1, 1], from the largest values found by hill climbing.
+	private static final double[] GRADIENTS_2D = gradients2D(0.01001634121365712);
+	private static final double[] GRADIENTS_3D = gradients3D(0.030487);
+	private static final double[] GRADIENTS_4D = gradients4D(0.031878);
+
+	/**
+	 * Creates the noise with the lattice oriented for slices in the xz plane.
+	 */
+	public FastOpenSimplex2Noise(long seed)
+	{
+		this(seed, Orientation.IMPROVE_XZ);
+	}
+
+	public FastOpenSimplex2Noise(long seed, Orientation orientation)
+	{
+		super(seed, orientation);
+	}
+
+	@Override
+	double eval2D(long seed, double xs, double ys)
+	{
+		// Base point and offsets.
+		int xsb = fastFloor(xs), ysb = fastFloor(ys);
+		double xi = xs - xsb, yi = ys - ysb;
+		long xsbp = xsb * PRIME_X, ysbp = ysb * PRIME_Y;
+		double t = (xi + yi) * UNSKEW_2D;
+		double dx0 = xi + t, dy0 = yi + t;
+
+		// The three corners of the triangle the sample is in.
+		double value = 0;
+		double a0 = RSQUARED_2D - dx0 * dx0 - dy0 * dy0;
+
+		if (a0 > 0)
+			value = (a0 * a0) * (a0 * a0) * gradient(GRADIENTS_2D, seed, xsbp, ysbp, dx0, dy0);
+
+		double dx1 = dx0 - (1 + 2 * UNSKEW_2D), dy1 = dy0 - (1 + 2 * UNSKEW_2D);
+		double a1 = RSQUARED_2D - dx1 * dx1 - dy1 * dy1;
+
+		if (a1 > 0)
+			value += (a1 * a1) * (a1 * a1) * gradient(GRADIENTS_2D, seed, xsbp + PRIME_X, ysbp + PRIME_Y, dx1, dy1);
+
+		if (dy0 > dx0)
+		{
+			double dx2 = dx0 - UNSKEW_2D, dy2 = dy0 - (UNSKEW_2D + 1);
+			double a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+
+			if (a2 > 0)
+				value += (a2 * a2) * (a2 * a2) * gradient(GRADIENTS_2D, seed, xsbp, ysbp + PRIME_Y, dx2, dy2);
+		}
+		else
+		{
+			double dx2 = dx0 - (UNSKEW_2D + 1), dy2 = dy0 - UNSKEW_2D;
+			double a2 = RSQUARED_2D - dx2 * dx2 - dy2 * dy2;
+
+			if (a2 > 0)
+				value += (a2 * a2) * (a2 * a2) * gradient(GRADIENTS_2D, seed, xsbp + PRIME_X, ysbp, dx2, dy2);
+		}
+
+		return value;
+	}
+
+	@Override
+	double eval3D(long seed, double xr, double yr, double zr)
+	{
+		// Closest point of the first cubic lattice and offsets.
+		int xrb = fastRound(xr), yrb = fastRound(yr), zrb = fastRound(zr);
+		double xri = xr - xrb, yri = yr - yrb, zri = zr - zrb;
+
+		// -1 if the offset is positive, 1 if negative.
+		int xNSign = (int) (-1.0 - xri) | 1, yNSign = (int) (-1.0 - yri) | 1, zNSign = (int) (-1.0 - zri) | 1;
+		double ax0 = xNSign * -xri, ay0 = yNSign * -yri, az0 = zNSign * -zri;
+		long xrbp = xrb * PRIME_X, yrbp = yrb * PRIME_Y, zrbp = zrb * PRIME_Z;
+
+		// The closest and second closest point of each lattice.
+		double value = 0;
+		double a = RSQUARED_3D - xri * xri - yri * yri - zri * zri;
+
+		for (int lattice = 0; ; ++lattice)
+		{
+			if (a > 0)
+				value += (a * a) * (a * a) * gradient(GRADIENTS_3D, seed, xrbp, yrbp, zrbp, xri, yri, zri);
+
+			// The second closest point is one step along the axis with the largest offset.
+			if (ax0 >= ay0 && ax0 >= az0)
+			{
+				double b = a + ax0 + ax0 - 1;
+
+				if (b > 0)
+					value += (b * b) * (b * b) * gradient(GRADIENTS_3D, seed, xrbp - xNSign * PRIME_X, yrbp, zrbp, xri + xNSign, yri, zri);
+			}
+			else if (ay0 > ax0 && ay0 >= az0)
+			{
+				double b = a + ay0 + ay0 - 1;
+
+				if (b > 0)
+					value += (b * b) * (b * b) * gradient(GRADIENTS_3D, seed, xrbp, yrbp - yNSign * PRIME_Y, zrbp, xri, yri + yNSign, zri);
+			}
+			else
+			{
+				double b = a + az0 + az0 - 1;
+
+				if (b > 0)
+					value += (b * b) * (b * b) * gradient(GRADIENTS_3D, seed, xrbp, yrbp, zrbp - zNSign * PRIME_Z, xri, yri, zri + zNSign);
+			}
+
+			if (lattice == 1)
+				break;
+
+			// Move to the closest point of the second lattice, half a step along every axis.
+			ax0 = 0.5 - ax0;
+			ay0 = 0.5 - ay0;
+			az0 = 0.5 - az0;
+			xri = xNSign * ax0;
+			yri = yNSign * ay0;
+			zri = zNSign * az0;
+			a = RSQUARED_3D - xri * xri - yri * yri - zri * zri;
+
+			xrbp += (xNSign >> 1) & PRIME_X;
+			yrbp += (yNSign >> 1) & PRIME_Y;
+			zrbp += (zNSign >> 1) & PRIME_Z;
+			xNSign = -xNSign;
+			yNSign = -yNSign;
+			zNSign = -zNSign;
+			seed ^= SEED_FLIP_3D;
+		}
+
+		return value;
+	}
+
+	@Override
+	double eval4D(long seed, double xs, double ys, double zs, double ws)
+	{
+		// Base point and offsets.
+		int xsb = fastFloor(xs), ysb = fastFloor(ys), zsb = fastFloor(zs), wsb = fastFloor(ws);
+		double xsi = xs - xsb, ysi = ys - ysb, zsi = zs - zsb, wsi = ws - wsb;
+
+		// The lattice copy that certainly has a contributing point in the base simplex of its cell.
+		double siSum = (xsi + ysi) + (zsi + wsi);
+		int startingLattice = (int) (siSum * 1.25);
+		seed += startingLattice * SEED_OFFSET_4D;
+
+		double startingLatticeOffset = startingLattice * -LATTICE_STEP_4D;
+		xsi += startingLatticeOffset;
+		ysi += startingLatticeOffset;
+		zsi += startingLatticeOffset;
+		wsi += startingLatticeOffset;
+
+		double ssi = (siSum + startingLatticeOffset * 4) * UNSKEW_4D;
+		long xsvp = xsb * PRIME_X, ysvp = ysb * PRIME_Y, zsvp = zsb * PRIME_Z, wsvp = wsb * PRIME_W;
+
+		// One point from each of the five lattice copies.
+		double value = 0;
+
+		for (int i = 0; ; ++i)
+		{
+			// The closest vertex of the simplex whose base vertex is the current point.
+			double score0 = 1.0 + ssi * (-1.0 / UNSKEW_4D);
+
+			if (xsi >= ysi && xsi >= zsi && xsi >= wsi && xsi >= score0)
+			{
+				xsvp += PRIME_X;
+				xsi -= 1;
+				ssi -= UNSKEW_4D;
+			}
+			else if (ysi > xsi && ysi >= zsi && ysi >= wsi && ysi >= score0)
+			{
+				ysvp += PRIME_Y;
+				ysi -= 1;
+				ssi -= UNSKEW_4D;
+			}
+			else if (zsi > xsi && zsi > ysi && zsi >= wsi && zsi >= score0)
+			{
+				zsvp += PRIME_Z;
+				zsi -= 1;
+				ssi -= UNSKEW_4D;
+			}
+			else if (wsi > xsi && wsi > ysi && wsi > zsi && wsi >= score0)
+			{
+				wsvp += PRIME_W;
+				wsi -= 1;
+				ssi -= UNSKEW_4D;
+			}
+
+			double dx = xsi + ssi, dy = ysi + ssi, dz = zsi + ssi, dw = wsi + ssi;
+			double a = (dx * dx + dy * dy) + (dz * dz + dw * dw);
+
+			if (a < RSQUARED_4D)
+			{
+				a -= RSQUARED_4D;
+				a *= a;
+				value += a * a * gradient(GRADIENTS_4D, seed, xsvp, ysvp, zsvp, wsvp, dx, dy, dz, dw);
+			}
+
+			if (i == 4)
+				break;
+
+			// Step to the next lattice copy, shifted down along the main diagonal.
+			xsi += LATTICE_STEP_4D;
+			ysi += LATTICE_STEP_4D;
+			zsi += LATTICE_STEP_4D;
+			wsi += LATTICE_STEP_4D;
+			ssi += LATTICE_STEP_4D * 4 * UNSKEW_4D;
+			seed -= SEED_OFFSET_4D;
+
+			// Wrap around from the lowest copy to the highest one of the cell below.
+			if (i == startingLattice)
+			{
+				xsvp -= PRIME_X;
+				ysvp -= PRIME_Y;
+				zsvp -= PRIME_Z;
+				wsvp -= PRIME_W;
+				seed += SEED_OFFSET_4D * 5;
+			}
+		}
+
+		return value;
+	}
+}
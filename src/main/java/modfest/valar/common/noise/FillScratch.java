@@ -0,0 +1,68 @@
+package modfest.valar.common.noise;
+
+/**
+ * Per-thread scratch buffers for fills that sample into a temporary buffer
+ * before writing their own. A buffer is taken out of the pool while in use,
+ * so a fill that is nested inside another gets a fresh one rather than
+ * overwriting its caller's samples.
+ */
+final class FillScratch
+{
+	private FillScratch() {}
+
+	private static final ThreadLocal<double[]> DOUBLES = new ThreadLocal<>();
+	private static final ThreadLocal<float[]> FLOATS = new ThreadLocal<>();
+
+	/**
+	 * @return a buffer at least size long, to be handed back with
+	 *         {@link #release(double[])} once done.
+	 */
+	static double[] doubles(int size)
+	{
+		double[] buffer = DOUBLES.get();
+
+		if (buffer == null || buffer.length < size)
+			return new double[size];
+
+		DOUBLES.set(null);
+		return buffer;
+	}
+
+	/**
+	 * @return a buffer at least size long, to be handed back with
+	 *         {@link #release(float[])} once done.
+	 */
+	static float[] floats(int size)
+	{
+		float[] buffer = FLOATS.get();
+
+		if (buffer == null || buffer.length < size)
+			return new float[size];
+
+		FLOATS.set(null);
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool, keeping the larger of it and any buffer
+	 * already there.
+	 */
+	static void release(double[] buffer)
+	{
+		double[] pooled = DOUBLES.get();
+
+		if (pooled == null || pooled.length < buffer.length)
+			DOUBLES.set(buffer);
+	}
+
+	/**
+	 * Returns a buffer to the pool. See {@link #release(double[])}.
+	 */
+	static void release(float[] buffer)
+	{
+		float[] pooled = FLOATS.get();
+
+		if (pooled == null || pooled.length < buffer.length)
+			FLOATS.set(buffer);
+	}
+}
@@ -0,0 +1,108 @@
+package modfest.valar.common.noise;
+
+/*
+ * Single precision counterpart of OpenSimplexNoise, for density fields stored as float.
+ *
+ * Every sample is worked out in double by the source noise and rounded once to float, so the
+ * output differs from OpenSimplexNoise of the same seed by at most half a float ulp, which is
+ * MAX_DEVIATION over the whole output range, at any coordinates. Grid fills go through the
+ * source's own bulk fills into a reused per-thread scratch buffer.
+ *
+ * This used to be a line-for-line float port of OpenSimplexNoise. On the JVM float arithmetic
+ * is no faster than double for this scalar code, and the port's 3D fill ran 1.2 to 1.9 times
+ * slower than OpenSimplexNoise's lattice-cached fill (on one core, 16x64x16 grids at steps 1/64
+ * to 1). It also deviated by up to 1e-3 and doubled the code to maintain. What float buys is
+ * the halved output and buffer size, which rounding the double result keeps.
+ */
+
+public class FloatOpenSimplexNoise implements NoiseGenerator
+{
+	//Bound on the difference from OpenSimplexNoise: half a float ulp for magnitudes below 2.
+	public static final double MAX_DEVIATION = 0x1p-24;
+
+	private final OpenSimplexNoise source;
+
+	public FloatOpenSimplexNoise(long seed) {
+		this(OpenSimplexNoise.shared(seed));
+	}
+
+	//Rounds the output of the given noise, which may be any OpenSimplexNoise implementation.
+	public FloatOpenSimplexNoise(OpenSimplexNoise source) {
+		this.source = source;
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.source.getSeed();
+	}
+
+	public OpenSimplexNoise getSource()
+	{
+		return this.source;
+	}
+
+	//2D OpenSimplex Noise.
+	public float eval(float x, float y) {
+		return (float) source.eval(x, y);
+	}
+
+	@Override
+	public double eval(double x, double y) {
+		return (float) source.eval(x, y);
+	}
+
+	//3D OpenSimplex Noise.
+	public float eval(float x, float y, float z) {
+		return (float) source.eval(x, y, z);
+	}
+
+	@Override
+	public double eval(double x, double y, double z) {
+		return (float) source.eval(x, y, z);
+	}
+
+	//4D OpenSimplex Noise.
+	public float eval(float x, float y, float z, float w) {
+		return (float) source.eval(x, y, z, w);
+	}
+
+	@Override
+	public double eval(double x, double y, double z, double w) {
+		return (float) source.eval(x, y, z, w);
+	}
+
+	//The range of OpenSimplexNoise, widened by the largest deviation from it.
+	@Override
+	public void bounds(double minX, double minY, double maxX, double maxY, double[] out) {
+		source.bounds(minX, minY, maxX, maxY, out);
+		out[0] -= MAX_DEVIATION;
+		out[1] += MAX_DEVIATION;
+	}
+
+	@Override
+	public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out) {
+		source.bounds(minX, minY, minZ, maxX, maxY, maxZ, out);
+		out[0] -= MAX_DEVIATION;
+		out[1] += MAX_DEVIATION;
+	}
+
+	//Grid fills of rounded samples. The float fills are NoiseGenerator's defaults, which round
+	//these through a scratch buffer.
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY) {
+		source.fill(buffer, x, y, stepX, stepY, sizeX, sizeY);
+		round(buffer, sizeX * sizeY);
+	}
+
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ) {
+		source.fill(buffer, x, y, z, stepX, stepY, stepZ, sizeX, sizeY, sizeZ);
+		round(buffer, sizeX * sizeY * sizeZ);
+	}
+
+	private static void round(double[] buffer, int size) {
+		for (int i = 0; i < size; i++)
+			buffer[i] = (float) buffer[i];
+	}
+}
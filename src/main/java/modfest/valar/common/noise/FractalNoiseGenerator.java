@@ -0,0 +1,512 @@
+package modfest.valar.common.noise;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Configurable fractal sum of OpenSimplex octaves. Octave i is sampled at
+ * frequency * lacunarity^i and weighted by gain^i, with the frequencies and
+ * amplitudes worked out once at construction. Every evaluation and fill shapes
+ * the octaves through the same per-type signal and weight functions.
+ */
+public class FractalNoiseGenerator implements NoiseGenerator
+{
+	/**
+	 * How the octaves are combined.
+	 */
+	public enum Type
+	{
+		/**
+		 * Fractional Brownian motion, the plain sum of the octaves.
+		 */
+		FBM,
+		/**
+		 * Sum of 2|n| - 1, giving puffy, rounded shapes.
+		 */
+		BILLOW,
+		/**
+		 * Sum of |n|, with creases where the octaves cross zero.
+		 */
+		TURBULENCE,
+		/**
+		 * Musgrave's ridged multifractal: sharp ridges along the zero crossings,
+		 * with each octave weighted by the one before so that detail gathers on
+		 * the ridges.
+		 */
+		RIDGED;
+	}
+
+	/**
+	 * Ridged octaves are (RIDGE_OFFSET - |n|)^2.
+	 */
+	private static final double RIDGE_OFFSET = 1D;
+
+	/**
+	 * How strongly a ridged octave weights the next one.
+	 */
+	private static final double RIDGE_WEIGHT_GAIN = 2D;
+
+	private final long seed;
+	private final Type type;
+	private final OpenSimplexNoise[] noises;
+	private final double[] frequencies;
+	private final double[] amplitudes;
+	private final double[] offsetsX, offsetsY, offsetsZ;
+
+	private FractalNoiseGenerator(Builder builder)
+	{
+		int octaves = builder.octaves;
+
+		this.seed = builder.seed;
+		this.type = builder.type;
+		this.noises = new OpenSimplexNoise[octaves];
+		this.frequencies = new double[octaves];
+		this.amplitudes = new double[octaves];
+		this.offsetsX = new double[octaves];
+		this.offsetsY = new double[octaves];
+		this.offsetsZ = new double[octaves];
+
+		Random random = new Random(builder.seed);
+		double frequency = builder.frequency;
+		double amplitude = 1D;
+
+		for (int i = 0; i < octaves; ++i)
+		{
+			this.noises[i] = builder.octaveSeeds || i == 0 ? OpenSimplexNoise.shared(builder.seed + i) : this.noises[0].variant(i);
+			this.frequencies[i] = frequency;
+			this.amplitudes[i] = amplitude;
+
+			if (builder.octaveOffsets)
+			{
+				this.offsetsX[i] = random.nextDouble() * 256D;
+				this.offsetsY[i] = random.nextDouble() * 256D;
+				this.offsetsZ[i] = random.nextDouble() * 256D;
+			}
+
+			frequency *= builder.lacunarity;
+			amplitude *= builder.gain;
+		}
+	}
+
+	public static Builder builder(long seed)
+	{
+		return new Builder(seed);
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	public Type getType()
+	{
+		return this.type;
+	}
+
+	public int getOctaveCount()
+	{
+		return this.noises.length;
+	}
+
+	public double getFrequency(int octave)
+	{
+		return this.frequencies[octave];
+	}
+
+	public double getAmplitude(int octave)
+	{
+		return this.amplitudes[octave];
+	}
+
+	@Override
+	public double eval(double x, double y)
+	{
+		OpenSimplexNoise[] noises = this.noises;
+		double[] frequencies = this.frequencies;
+		double[] amplitudes = this.amplitudes;
+		double sum = 0D, weight = 1D;
+
+		for (int i = 0; i < noises.length; ++i)
+		{
+			double signal = this.signal(noises[i].eval(x * frequencies[i] + offsetsX[i], y * frequencies[i] + offsetsY[i]), weight);
+			weight = this.weight(signal);
+			sum += amplitudes[i] * signal;
+		}
+
+		return sum;
+	}
+
+	@Override
+	public double eval(double x, double y, double z)
+	{
+		OpenSimplexNoise[] noises = this.noises;
+		double[] frequencies = this.frequencies;
+		double[] amplitudes = this.amplitudes;
+		double sum = 0D, weight = 1D;
+
+		for (int i = 0; i < noises.length; ++i)
+		{
+			double signal = this.signal(noises[i].eval(x * frequencies[i] + offsetsX[i], y * frequencies[i] + offsetsY[i], z * frequencies[i] + offsetsZ[i]), weight);
+			weight = this.weight(signal);
+			sum += amplitudes[i] * signal;
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Evaluates 4D noise. Octave offsets only apply to x, y and z.
+	 */
+	@Override
+	public double eval(double x, double y, double z, double w)
+	{
+		OpenSimplexNoise[] noises = this.noises;
+		double[] frequencies = this.frequencies;
+		double[] amplitudes = this.amplitudes;
+		double sum = 0D, weight = 1D;
+
+		for (int i = 0; i < noises.length; ++i)
+		{
+			double signal = this.signal(noises[i].eval(x * frequencies[i] + offsetsX[i], y * frequencies[i] + offsetsY[i], z * frequencies[i] + offsetsZ[i], w * frequencies[i]), weight);
+			weight = this.weight(signal);
+			sum += amplitudes[i] * signal;
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Fills the grid octave by octave, and combines the octaves as eval does.
+	 * Each octave is sampled at the same scaled coordinates eval works out, with
+	 * samples in the same super-cell sharing its gradients, so samples match eval
+	 * bit for bit.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		int size = sizeX * sizeY;
+		double[] weights = this.startFill(buffer, size);
+
+		for (int o = 0; o < noises.length; ++o)
+		{
+			OpenSimplexNoise noise = noises[o];
+			double frequency = frequencies[o], amplitude = amplitudes[o];
+			OpenSimplexNoise.LatticeCache cache = OpenSimplexNoise.LatticeCache.forStep(stepY * frequency);
+			int index = 0;
+
+			for (int i = 0; i < sizeX; ++i)
+			{
+				double sampleX = (x + i * stepX) * frequency + offsetsX[o];
+
+				for (int j = 0; j < sizeY; ++j)
+					this.add(buffer, weights, index++, amplitude, noise.eval2D(sampleX, (y + j * stepY) * frequency + offsetsY[o], null, cache));
+			}
+		}
+
+		this.endFill(weights);
+	}
+
+	/**
+	 * Fills the grid octave by octave. See
+	 * {@link #fill(double[], double, double, double, double, int, int)}.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		int size = sizeX * sizeY * sizeZ;
+		double[] weights = this.startFill(buffer, size);
+
+		for (int o = 0; o < noises.length; ++o)
+		{
+			OpenSimplexNoise noise = noises[o];
+			double frequency = frequencies[o], amplitude = amplitudes[o];
+			OpenSimplexNoise.LatticeCache cache = OpenSimplexNoise.LatticeCache.forStep(stepZ * frequency);
+			int index = 0;
+
+			for (int i = 0; i < sizeX; ++i)
+			{
+				double sampleX = (x + i * stepX) * frequency + offsetsX[o];
+
+				for (int j = 0; j < sizeY; ++j)
+				{
+					double sampleY = (y + j * stepY) * frequency + offsetsY[o];
+
+					for (int k = 0; k < sizeZ; ++k)
+						this.add(buffer, weights, index++, amplitude, noise.eval3D(sampleX, sampleY, (z + k * stepZ) * frequency + offsetsZ[o], sampleX + sampleY, null, cache));
+				}
+			}
+		}
+
+		this.endFill(weights);
+	}
+
+	/**
+	 * Clears the sums of a fill.
+	 *
+	 * @return the weights of the next octave for each sample, all 1, if the
+	 *         type is ridged, otherwise null. Hand them back to
+	 *         {@link #endFill(double[])}.
+	 */
+	private double[] startFill(double[] buffer, int size)
+	{
+		Arrays.fill(buffer, 0, size, 0D);
+
+		if (this.type != Type.RIDGED)
+			return null;
+
+		double[] weights = FillScratch.doubles(size);
+		Arrays.fill(weights, 0, size, 1D);
+		return weights;
+	}
+
+	private void endFill(double[] weights)
+	{
+		if (weights != null)
+			FillScratch.release(weights);
+	}
+
+	/**
+	 * Adds an octave's raw value onto the sum of a sample of a fill.
+	 */
+	private void add(double[] sums, double[] weights, int index, double amplitude, double value)
+	{
+		if (weights == null)
+		{
+			sums[index] += amplitude * this.signal(value, 1D);
+		}
+		else
+		{
+			double signal = this.signal(value, weights[index]);
+			weights[index] = this.weight(signal);
+			sums[index] += amplitude * signal;
+		}
+	}
+
+	/**
+	 * Shapes a raw octave value as the type combines it.
+	 *
+	 * @param weight
+	 *            the weight of the octave, set by the one before. Only ridged
+	 *            noise uses it.
+	 */
+	private double signal(double value, double weight)
+	{
+		switch (this.type)
+		{
+		case BILLOW:
+			return 2D * Math.abs(value) - 1D;
+		case TURBULENCE:
+			return Math.abs(value);
+		case RIDGED:
+			double signal = RIDGE_OFFSET - Math.abs(value);
+			return signal * (signal * weight);
+		default:
+			return value;
+		}
+	}
+
+	/**
+	 * @return the weight of the next octave after one with the given signal.
+	 */
+	private double weight(double signal)
+	{
+		return this.type == Type.RIDGED ? Math.min(1D, Math.max(0D, signal * RIDGE_WEIGHT_GAIN)) : 1D;
+	}
+
+	@Override
+	public void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+	{
+		double cx = (minX + maxX) * 0.5D, cy = (minY + maxY) * 0.5D;
+		double dx = (maxX - minX) * 0.5D, dy = (maxY - minY) * 0.5D;
+		double radius = Math.sqrt(dx * dx + dy * dy) * OpenSimplexNoise.MAX_GRADIENT_2D;
+		double[] ranges = FillScratch.doubles(2 * noises.length);
+
+		for (int i = 0; i < noises.length; ++i)
+		{
+			double spread = radius * Math.abs(frequencies[i]);
+			double center = spread >= 2D * OpenSimplexNoise.MAX_VALUE_2D ? 0D : noises[i].eval(cx * frequencies[i] + offsetsX[i], cy * frequencies[i] + offsetsY[i]);
+
+			ranges[2 * i] = Math.max(-OpenSimplexNoise.MAX_VALUE_2D, center - spread);
+			ranges[2 * i + 1] = Math.min(OpenSimplexNoise.MAX_VALUE_2D, center + spread);
+		}
+
+		this.combine(ranges, out);
+		FillScratch.release(ranges);
+	}
+
+	@Override
+	public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out)
+	{
+		double cx = (minX + maxX) * 0.5D, cy = (minY + maxY) * 0.5D, cz = (minZ + maxZ) * 0.5D;
+		double dx = (maxX - minX) * 0.5D, dy = (maxY - minY) * 0.5D, dz = (maxZ - minZ) * 0.5D;
+		double radius = Math.sqrt(dx * dx + dy * dy + dz * dz) * OpenSimplexNoise.MAX_GRADIENT_3D;
+		double[] ranges = FillScratch.doubles(2 * noises.length);
+
+		for (int i = 0; i < noises.length; ++i)
+		{
+			double spread = radius * Math.abs(frequencies[i]);
+			double center = spread >= 2D * OpenSimplexNoise.MAX_VALUE_3D ? 0D : noises[i].eval(cx * frequencies[i] + offsetsX[i], cy * frequencies[i] + offsetsY[i], cz * frequencies[i] + offsetsZ[i]);
+
+			ranges[2 * i] = Math.max(-OpenSimplexNoise.MAX_VALUE_3D, center - spread);
+			ranges[2 * i + 1] = Math.min(OpenSimplexNoise.MAX_VALUE_3D, center + spread);
+		}
+
+		this.combine(ranges, out);
+		FillScratch.release(ranges);
+	}
+
+	/**
+	 * Combines the ranges of the raw octaves the same way eval combines their
+	 * values.
+	 *
+	 * @param ranges
+	 *            the low and high of each octave in turn.
+	 */
+	private void combine(double[] ranges, double[] out)
+	{
+		double min = 0D, max = 0D;
+		double minWeight = 1D, maxWeight = 1D;
+
+		for (int i = 0; i < noises.length; ++i)
+		{
+			double low = ranges[2 * i], high = ranges[2 * i + 1];
+
+			if (this.type != Type.FBM)
+			{
+				// range of |n|
+				double absLow = low > 0D ? low : high < 0D ? -high : 0D;
+				double absHigh = Math.max(-low, high);
+
+				low = absLow;
+				high = absHigh;
+			}
+
+			switch (this.type)
+			{
+			case BILLOW:
+				low = 2D * low - 1D;
+				high = 2D * high - 1D;
+				break;
+			case RIDGED:
+				// the bounds on |n| reach past RIDGE_OFFSET, where the signal rises again, so
+				// take the |n| in range nearest to and farthest from it
+				double nearest = Math.min(Math.max(RIDGE_OFFSET, low), high);
+				double farthest = RIDGE_OFFSET - low > high - RIDGE_OFFSET ? low : high;
+				double signalLow = (RIDGE_OFFSET - nearest) * (RIDGE_OFFSET - nearest) * minWeight;
+				double signalHigh = (RIDGE_OFFSET - farthest) * (RIDGE_OFFSET - farthest) * maxWeight;
+
+				minWeight = Math.min(1D, Math.max(0D, signalLow * RIDGE_WEIGHT_GAIN));
+				maxWeight = Math.min(1D, Math.max(0D, signalHigh * RIDGE_WEIGHT_GAIN));
+				low = signalLow;
+				high = signalHigh;
+				break;
+			default:
+				break;
+			}
+
+			if (amplitudes[i] >= 0D)
+			{
+				min += amplitudes[i] * low;
+				max += amplitudes[i] * high;
+			}
+			else
+			{
+				min += amplitudes[i] * high;
+				max += amplitudes[i] * low;
+			}
+		}
+
+		out[0] = min;
+		out[1] = max;
+	}
+
+	public static final class Builder
+	{
+		private final long seed;
+		private Type type = Type.FBM;
+		private int octaves = 4;
+		private double frequency = 1D;
+		private double lacunarity = 2D;
+		private double gain = 0.5D;
+		private boolean octaveSeeds = true;
+		private boolean octaveOffsets = false;
+
+		private Builder(long seed)
+		{
+			this.seed = seed;
+		}
+
+		public Builder setType(Type type)
+		{
+			this.type = Objects.requireNonNull(type);
+			return this;
+		}
+
+		public Builder setOctaves(int octaves)
+		{
+			if (octaves < 1)
+				throw new IllegalArgumentException("At least one octave is needed");
+
+			this.octaves = octaves;
+			return this;
+		}
+
+		/**
+		 * Sets the frequency of the first octave, 1 by default.
+		 */
+		public Builder setFrequency(double frequency)
+		{
+			this.frequency = frequency;
+			return this;
+		}
+
+		/**
+		 * Sets the factor between the frequencies of consecutive octaves, 2 by
+		 * default.
+		 */
+		public Builder setLacunarity(double lacunarity)
+		{
+			this.lacunarity = lacunarity;
+			return this;
+		}
+
+		/**
+		 * Sets the factor between the amplitudes of consecutive octaves, 0.5 by
+		 * default.
+		 */
+		public Builder setGain(double gain)
+		{
+			this.gain = gain;
+			return this;
+		}
+
+		/**
+		 * Sets whether octave i is seeded with seed + i, which is the default.
+		 * Otherwise every octave shares the permutation table of the seed and
+		 * is decorrelated by {@link OpenSimplexNoise#variant(int)} instead.
+		 */
+		public Builder setOctaveSeeds(boolean octaveSeeds)
+		{
+			this.octaveSeeds = octaveSeeds;
+			return this;
+		}
+
+		/**
+		 * Sets whether each octave's coordinates are shifted by a random offset
+		 * derived from the seed, so that the octaves' lattices don't line up at
+		 * the origin. Off by default.
+		 */
+		public Builder setOctaveOffsets(boolean octaveOffsets)
+		{
+			this.octaveOffsets = octaveOffsets;
+			return this;
+		}
+
+		public FractalNoiseGenerator build()
+		{
+			return new FractalNoiseGenerator(this);
+		}
+	}
+}
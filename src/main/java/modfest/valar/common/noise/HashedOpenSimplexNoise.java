@@ -0,0 +1,66 @@
+package modfest.valar.common.noise;
+
+/**
+ * OpenSimplex noise that selects the gradient of each lattice point by hashing
+ * the seed with the point's coordinates instead of looking it up in
+ * permutation tables. Construction only stores the seed, and instances hold
+ * no tables, so creating noise for a new seed costs nothing and any number of
+ * generators can be used together without competing for cache.
+ * <p>
+ * The lattice, falloff and gradient sets are those of
+ * {@link OpenSimplexNoise}, so the noise looks the same and stays within the
+ * same bounds, but the gradients chosen differ, so the output for a given
+ * seed does not match the table-based noise.
+ */
+public class HashedOpenSimplexNoise extends OpenSimplexNoise
+{
+	private static final long PRIME_X = OpenSimplex2Noise.PRIME_X;
+	private static final long PRIME_Y = OpenSimplex2Noise.PRIME_Y;
+	private static final long PRIME_Z = OpenSimplex2Noise.PRIME_Z;
+	private static final long PRIME_W = OpenSimplex2Noise.PRIME_W;
+	private static final long HASH_MULTIPLIER = OpenSimplex2Noise.HASH_MULTIPLIER;
+
+	private static final int GRADIENTS_3D = gradients3D.length / 3;
+
+	public HashedOpenSimplexNoise(long seed)
+	{
+		super(seed, null);
+	}
+
+	@Override
+	OpenSimplexNoise withTable(PermutationTable table)
+	{
+		return new HashedOpenSimplexNoise(this.getSeed());
+	}
+
+	/**
+	 * @return the hash of a lattice point, whose high bits are the best mixed.
+	 */
+	private long hash(long xsvp, long ysvp)
+	{
+		return (this.getSeed() ^ xsvp ^ ysvp) * HASH_MULTIPLIER;
+	}
+
+	@Override
+	int gradientIndex2D(int xsv, int ysv)
+	{
+		// 8 gradients, from the top 3 bits.
+		return (int) (this.hash(xsv * PRIME_X, ysv * PRIME_Y) >>> 61) << 1;
+	}
+
+	@Override
+	int gradientIndex3D(int xsv, int ysv, int zsv)
+	{
+		// 24 gradients, from the top 32 bits scaled down to the count.
+		long hash = this.hash(xsv * PRIME_X, ysv * PRIME_Y ^ zsv * PRIME_Z);
+		return (int) (((hash >>> 32) * GRADIENTS_3D) >>> 32) * 3;
+	}
+
+	@Override
+	int gradientIndex4D(int xsv, int ysv, int zsv, int wsv)
+	{
+		// 64 gradients, from the top 6 bits.
+		long hash = this.hash(xsv * PRIME_X ^ ysv * PRIME_Y, zsv * PRIME_Z ^ wsv * PRIME_W);
+		return (int) (hash >>> 58) << 2;
+	}
+}
@@ -0,0 +1,221 @@
+package modfest.valar.common.noise;
+
+/**
+ * Wraps a noise generator so that grid fills only evaluate the parent on a
+ * coarse lattice, every cellX by cellY by cellZ samples, and linearly
+ * interpolate the samples in between. Single point evaluation is passed
+ * straight through to the parent, so callers can pick exact or interpolated
+ * density by choosing which generator to fill from.
+ */
+public class InterpolatedNoiseGenerator implements NoiseGenerator
+{
+	private final NoiseGenerator parent;
+	private final int cellX, cellY, cellZ;
+
+	public InterpolatedNoiseGenerator(NoiseGenerator parent, int cellX, int cellY, int cellZ)
+	{
+		if (cellX < 1 || cellY < 1 || cellZ < 1)
+			throw new IllegalArgumentException("Cell sizes must be positive");
+
+		this.parent = parent;
+		this.cellX = cellX;
+		this.cellY = cellY;
+		this.cellZ = cellZ;
+	}
+
+	@Override
+	public double eval(double x, double y)
+	{
+		return this.parent.eval(x, y);
+	}
+
+	@Override
+	public double eval(double x, double y, double z)
+	{
+		return this.parent.eval(x, y, z);
+	}
+
+	@Override
+	public double eval(double x, double y, double z, double w)
+	{
+		return this.parent.eval(x, y, z, w);
+	}
+
+	/**
+	 * Passes through to the parent, so the range covers eval but not the
+	 * interpolated samples of a fill, which come from lattice points that may
+	 * lie outside the box. Use
+	 * {@link #fillBounds(double, double, double, double, double, double, int, int, int, double[])}
+	 * to bound a fill.
+	 */
+	@Override
+	public void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+	{
+		this.parent.bounds(minX, minY, maxX, maxY, out);
+	}
+
+	/**
+	 * Passes through to the parent, like
+	 * {@link #bounds(double, double, double, double, double[])}.
+	 */
+	@Override
+	public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out)
+	{
+		this.parent.bounds(minX, minY, minZ, maxX, maxY, maxZ, out);
+	}
+
+	/**
+	 * Interpolated samples lie between the values at the lattice points, so this
+	 * bounds the parent over the whole lattice, which reaches up to a cell past
+	 * the last sample along each axis.
+	 */
+	@Override
+	public void fillBounds(double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ, double[] out)
+	{
+		double endX = x + (sizeX + cellX - 1) / cellX * cellX * stepX;
+		double endY = y + (sizeY + cellY - 1) / cellY * cellY * stepY;
+		double endZ = z + (sizeZ + cellZ - 1) / cellZ * cellZ * stepZ;
+
+		this.parent.bounds(Math.min(x, endX), Math.min(y, endY), Math.min(z, endZ), Math.max(x, endX), Math.max(y, endY), Math.max(z, endZ), out);
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.parent.getSeed();
+	}
+
+	public NoiseGenerator getParent()
+	{
+		return this.parent;
+	}
+
+	/**
+	 * Bilinearly interpolates a 2D grid from the parent sampled every cellX by
+	 * cellY samples.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		int cellsX = (sizeX + cellX - 1) / cellX;
+		int cellsY = (sizeY + cellY - 1) / cellY;
+		int latticeY = cellsY + 1;
+
+		double[] lattice = new double[(cellsX + 1) * latticeY];
+		this.parent.fill(lattice, x, y, stepX * cellX, stepY * cellY, cellsX + 1, latticeY);
+
+		double invX = 1D / cellX;
+		double invY = 1D / cellY;
+
+		for (int a = 0; a < cellsX; ++a)
+		{
+			int maxI = Math.min(cellX, sizeX - a * cellX);
+
+			for (int b = 0; b < cellsY; ++b)
+			{
+				int maxJ = Math.min(cellY, sizeY - b * cellY);
+				int corner = a * latticeY + b;
+
+				double v0 = lattice[corner];
+				double v1 = lattice[corner + 1];
+				double d0 = (lattice[corner + latticeY] - v0) * invX;
+				double d1 = (lattice[corner + latticeY + 1] - v1) * invX;
+
+				for (int i = 0; i < maxI; ++i)
+				{
+					double value = v0;
+					double dy = (v1 - v0) * invY;
+					int index = (a * cellX + i) * sizeY + b * cellY;
+
+					for (int j = 0; j < maxJ; ++j)
+					{
+						buffer[index++] = value;
+						value += dy;
+					}
+
+					v0 += d0;
+					v1 += d1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Trilinearly interpolates a 3D grid from the parent sampled every cellX by
+	 * cellY by cellZ samples.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		int cellsX = (sizeX + cellX - 1) / cellX;
+		int cellsY = (sizeY + cellY - 1) / cellY;
+		int cellsZ = (sizeZ + cellZ - 1) / cellZ;
+		int latticeY = cellsY + 1;
+		int latticeZ = cellsZ + 1;
+		int latticeYZ = latticeY * latticeZ;
+
+		double[] lattice = new double[(cellsX + 1) * latticeYZ];
+		this.parent.fill(lattice, x, y, z, stepX * cellX, stepY * cellY, stepZ * cellZ, cellsX + 1, latticeY, latticeZ);
+
+		double invX = 1D / cellX;
+		double invY = 1D / cellY;
+		double invZ = 1D / cellZ;
+
+		for (int a = 0; a < cellsX; ++a)
+		{
+			int maxI = Math.min(cellX, sizeX - a * cellX);
+
+			for (int b = 0; b < cellsY; ++b)
+			{
+				int maxJ = Math.min(cellY, sizeY - b * cellY);
+
+				for (int c = 0; c < cellsZ; ++c)
+				{
+					int maxK = Math.min(cellZ, sizeZ - c * cellZ);
+					int corner = (a * latticeY + b) * latticeZ + c;
+
+					// corner values on the low x face, named by their (y, z) offsets
+					double v00 = lattice[corner];
+					double v01 = lattice[corner + 1];
+					double v10 = lattice[corner + latticeZ];
+					double v11 = lattice[corner + latticeZ + 1];
+
+					// per sample steps along x towards the high x face
+					double d00 = (lattice[corner + latticeYZ] - v00) * invX;
+					double d01 = (lattice[corner + latticeYZ + 1] - v01) * invX;
+					double d10 = (lattice[corner + latticeYZ + latticeZ] - v10) * invX;
+					double d11 = (lattice[corner + latticeYZ + latticeZ + 1] - v11) * invX;
+
+					for (int i = 0; i < maxI; ++i)
+					{
+						double z0 = v00;
+						double z1 = v01;
+						double dy0 = (v10 - v00) * invY;
+						double dy1 = (v11 - v01) * invY;
+
+						for (int j = 0; j < maxJ; ++j)
+						{
+							double value = z0;
+							double dz = (z1 - z0) * invZ;
+							int index = ((a * cellX + i) * sizeY + b * cellY + j) * sizeZ + c * cellZ;
+
+							for (int k = 0; k < maxK; ++k)
+							{
+								buffer[index++] = value;
+								value += dz;
+							}
+
+							z0 += dy0;
+							z1 += dy1;
+						}
+
+						v00 += d00;
+						v01 += d01;
+						v10 += d10;
+						v11 += d11;
+					}
+				}
+			}
+		}
+	}
+}
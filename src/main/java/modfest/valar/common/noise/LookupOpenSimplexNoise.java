@@ -0,0 +1,728 @@
+package modfest.valar.common.noise;
+
+import java.util.Arrays;
+
+/**
+ * OpenSimplex noise that finds the lattice points contributing to 3D and 4D
+ * noise in lookup tables instead of walking the decision tree of
+ * {@link OpenSimplexNoise}. The region and closest vertex decisions are
+ * replayed with the same comparisons and reduced to a key, which selects the
+ * ordered list of lattice points, including the extra vertices, that the
+ * reference implementation would visit. The displacement to each point is
+ * then computed with the same sequence of subtractions, and the contributions
+ * are summed in the same order, so the output is bit-identical.
+ * <p>
+ * The tables were generated by tracing the reference implementation. A key
+ * missing from them, or evaluation with derivatives, falls back on the
+ * reference implementation. Get instances from
+ * {@link OpenSimplexNoise#shared(long, OpenSimplexNoise.Implementation)}.
+ */
+final class LookupOpenSimplexNoise extends OpenSimplexNoise
+{
+	/**
+	 * For each key, the key, the number of lattice points and then the points,
+	 * in the order they contribute. Each point has a byte per axis, x in the
+	 * lowest, holding the lattice offset o from the super-cell origin plus one
+	 * in bits 0 to 1, the step a plus one in bits 2 to 3, and the number of
+	 * squish constants b in bits 4 to 6. The displacement along the axis is
+	 * ((d0 - a) - b * SQUISH) - (o - a).
+	 */
+	private static final int[] TABLE_3D = {
+		0x001, 6, 0x050505, 0x15151A, 0x151A15, 0x1A1515, 0x05000A, 0x00050A,
+		0x002, 6, 0x050505, 0x15151A, 0x151A15, 0x1A1515, 0x050A00, 0x000A05,
+		0x004, 6, 0x050505, 0x15151A, 0x151A15, 0x1A1515, 0x0A0500, 0x0A0005,
+		0x103, 6, 0x050505, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x101A1A,
+		0x105, 6, 0x050505, 0x15151A, 0x151A15, 0x1A1515, 0x2A252A, 0x1A101A,
+		0x106, 6, 0x050505, 0x15151A, 0x151A15, 0x1A1515, 0x2A2A25, 0x1A1A10,
+		0x203, 6, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x353A37, 0x35373A,
+		0x205, 6, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x3A3537, 0x37353A,
+		0x206, 6, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x3A3735, 0x373A35,
+		0x301, 6, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x15151A, 0x25252B,
+		0x302, 6, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x151A15, 0x252B25,
+		0x304, 6, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x1A1515, 0x2B2525,
+		0x401, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x25252B,
+		0x402, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x252B25,
+		0x404, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x3A3A3A, 0x2B2525,
+		0x503, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x050505, 0x101A1A,
+		0x505, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x050505, 0x1A101A,
+		0x506, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x050505, 0x1A1A10,
+		0x631, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x101A1A, 0x252527,
+		0x632, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x101A1A, 0x252725,
+		0x651, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x1A101A, 0x252527,
+		0x654, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x1A101A, 0x272525,
+		0x662, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x1A1A10, 0x252725,
+		0x664, 8, 0x15151A, 0x151A15, 0x1A1515, 0x252A2A, 0x2A252A, 0x2A2A25, 0x1A1A10, 0x272525
+	};
+
+	private static final int[] TABLE_4D = {
+		0x001, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x0505000A, 0x0500050A, 0x0005050A,
+		0x002, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x05050A00, 0x05000A05, 0x00050A05,
+		0x004, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x050A0500, 0x050A0005, 0x000A0505,
+		0x008, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x0A050500, 0x0A050005, 0x0A000505,
+		0x103, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x15141A1A, 0x10151A1A,
+		0x105, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x252A252A, 0x151A141A, 0x101A151A,
+		0x106, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x252A2A25, 0x151A1A10, 0x101A1A15,
+		0x109, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x2A25252A, 0x1A15141A, 0x1A14151A,
+		0x10A, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x2A252A25, 0x1A151A10, 0x1A141A15,
+		0x10C, 8, 0x05050505, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x2A2A2525, 0x1A1A1510, 0x1A1A1415,
+		0x207, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x454A4A47, 0x454A474A, 0x45474A4A,
+		0x20B, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x4A454A47, 0x4A45474A, 0x47454A4A,
+		0x20D, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x4A4A4547, 0x4A47454A, 0x474A454A,
+		0x20E, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x4A4A4745, 0x4A474A45, 0x474A4A45,
+		0x303, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x25252A2A, 0x35353A37, 0x3535373A,
+		0x305, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x252A252A, 0x353A3537, 0x3537353A,
+		0x306, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x252A2A25, 0x353A3735, 0x35373A35,
+		0x309, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x2A25252A, 0x3A353537, 0x3735353A,
+		0x30A, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x2A252A25, 0x3A353735, 0x37353A35,
+		0x30C, 8, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x4A4A4A4A, 0x2A2A2525, 0x3A373535, 0x373A3535,
+		0x471, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3A3A, 0x202A2A2A, 0x25252527,
+		0x472, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3A3A, 0x202A2A2A, 0x25252725,
+		0x474, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3A3A, 0x202A2A2A, 0x25272525,
+		0x4B1, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353A3A, 0x2A202A2A, 0x25252527,
+		0x4B2, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353A3A, 0x2A202A2A, 0x25252725,
+		0x4B8, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353A3A, 0x2A202A2A, 0x27252525,
+		0x4D1, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A3A353A, 0x2A2A202A, 0x25252527,
+		0x4D4, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A3A353A, 0x2A2A202A, 0x25272525,
+		0x4D8, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A3A353A, 0x2A2A202A, 0x27252525,
+		0x4E2, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A3A3A35, 0x2A2A2A20, 0x25252725,
+		0x4E4, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A3A3A35, 0x2A2A2A20, 0x25272525,
+		0x4E8, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A3A3A35, 0x2A2A2A20, 0x27252525,
+		0x503, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x15101A1A, 0x10151A1A, 0x05050505,
+		0x505, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A101A, 0x101A151A, 0x05050505,
+		0x506, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A1A10, 0x101A1A15, 0x05050505,
+		0x509, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A15101A, 0x1A10151A, 0x05050505,
+		0x50A, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A151A10, 0x1A101A15, 0x05050505,
+		0x50C, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A1A1510, 0x1A1A1015, 0x05050505,
+		0x631, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x15101A1A, 0x10151A1A, 0x25252527,
+		0x632, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x15101A1A, 0x10151A1A, 0x25252725,
+		0x651, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A101A, 0x101A151A, 0x25252527,
+		0x654, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A101A, 0x101A151A, 0x25272525,
+		0x662, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A1A10, 0x101A1A15, 0x25252725,
+		0x664, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A1A10, 0x101A1A15, 0x25272525,
+		0x691, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A15101A, 0x1A10151A, 0x25252527,
+		0x698, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A15101A, 0x1A10151A, 0x27252525,
+		0x6A2, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A151A10, 0x1A101A15, 0x25252725,
+		0x6A8, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A151A10, 0x1A101A15, 0x27252525,
+		0x6C4, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A1A1510, 0x1A1A1015, 0x25272525,
+		0x6C8, 13, 0x1515151A, 0x15151A15, 0x151A1515, 0x1A151515, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A1A1510, 0x1A1A1015, 0x27252525,
+		0x717, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1515151A, 0x25252527, 0x242A2A2A,
+		0x71B, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1515151A, 0x25252527, 0x2A242A2A,
+		0x71D, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1515151A, 0x25252527, 0x2A2A242A,
+		0x727, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x15151A15, 0x25252725, 0x242A2A2A,
+		0x72B, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x15151A15, 0x25252725, 0x2A242A2A,
+		0x72E, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x15151A15, 0x25252725, 0x2A2A2A24,
+		0x747, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A1515, 0x25272525, 0x242A2A2A,
+		0x74D, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A1515, 0x25272525, 0x2A2A242A,
+		0x74E, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x151A1515, 0x25272525, 0x2A2A2A24,
+		0x78B, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A151515, 0x27252525, 0x2A242A2A,
+		0x78D, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A151515, 0x27252525, 0x2A2A242A,
+		0x78E, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x1A151515, 0x27252525, 0x2A2A2A24,
+		0x803, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x35353A37, 0x3535373A, 0x4A4A4A4A,
+		0x805, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3537, 0x3537353A, 0x4A4A4A4A,
+		0x806, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3735, 0x35373A35, 0x4A4A4A4A,
+		0x809, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353537, 0x3735353A, 0x4A4A4A4A,
+		0x80A, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353735, 0x37353A35, 0x4A4A4A4A,
+		0x80C, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A373535, 0x373A3535, 0x4A4A4A4A,
+		0x937, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x35353A37, 0x3535373A, 0x242A2A2A,
+		0x93B, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x35353A37, 0x3535373A, 0x2A242A2A,
+		0x957, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3537, 0x3537353A, 0x242A2A2A,
+		0x95D, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3537, 0x3537353A, 0x2A2A242A,
+		0x967, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3735, 0x35373A35, 0x242A2A2A,
+		0x96E, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x353A3735, 0x35373A35, 0x2A2A2A24,
+		0x99B, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353537, 0x3735353A, 0x2A242A2A,
+		0x99D, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353537, 0x3735353A, 0x2A2A242A,
+		0x9AB, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353735, 0x37353A35, 0x2A242A2A,
+		0x9AE, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A353735, 0x37353A35, 0x2A2A2A24,
+		0x9CD, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A373535, 0x373A3535, 0x2A2A242A,
+		0x9CE, 13, 0x353A3A3A, 0x3A353A3A, 0x3A3A353A, 0x3A3A3A35, 0x25252A2A, 0x252A252A, 0x2A25252A, 0x252A2A25, 0x2A252A25, 0x2A2A2525, 0x3A373535, 0x373A3535, 0x2A2A2A24
+	};
+
+	private static final int CASES_3D = 7;
+	private static final int CASES_4D = 10;
+
+	/**
+	 * The first and one past the last lattice point for each key, or -1 if the
+	 * key is not in the tables.
+	 */
+	private static final int[] START_3D = new int[CASES_3D << 8], END_3D = new int[CASES_3D << 8];
+	private static final int[] START_4D = new int[CASES_4D << 8], END_4D = new int[CASES_4D << 8];
+
+	/**
+	 * The lattice offsets of each point, one int per axis.
+	 */
+	private static final int[] LATTICE_3D, LATTICE_4D;
+
+	/**
+	 * The three subtrahends a, b * SQUISH and o - a of each point, per axis.
+	 */
+	private static final double[] STEPS_3D, STEPS_4D;
+
+	static
+	{
+		LATTICE_3D = new int[3 * count(TABLE_3D)];
+		STEPS_3D = new double[9 * count(TABLE_3D)];
+		LATTICE_4D = new int[4 * count(TABLE_4D)];
+		STEPS_4D = new double[12 * count(TABLE_4D)];
+		unpack(TABLE_3D, 3, SQUISH_CONSTANT_3D, START_3D, END_3D, LATTICE_3D, STEPS_3D);
+		unpack(TABLE_4D, 4, SQUISH_CONSTANT_4D, START_4D, END_4D, LATTICE_4D, STEPS_4D);
+	}
+
+	private static int count(int[] table)
+	{
+		int count = 0;
+
+		for (int i = 0; i < table.length; i += 2 + table[i + 1])
+			count += table[i + 1];
+
+		return count;
+	}
+
+	private static void unpack(int[] table, int dimensions, double squish, int[] start, int[] end, int[] lattice, double[] steps)
+	{
+		Arrays.fill(start, -1);
+		Arrays.fill(end, -1);
+		int point = 0;
+
+		for (int i = 0; i < table.length; i += 2 + table[i + 1])
+		{
+			start[table[i]] = point;
+
+			for (int j = 0; j < table[i + 1]; ++j, ++point)
+			{
+				for (int axis = 0; axis < dimensions; ++axis)
+				{
+					int code = table[i + 2 + j] >>> (axis << 3);
+					int o = (code & 3) - 1;
+					int a = ((code >>> 2) & 3) - 1;
+					int b = (code >>> 4) & 7;
+
+					lattice[point * dimensions + axis] = o;
+					steps[(point * dimensions + axis) * 3] = a;
+					steps[(point * dimensions + axis) * 3 + 1] = b * squish;
+					steps[(point * dimensions + axis) * 3 + 2] = o - a;
+				}
+			}
+
+			end[table[i]] = point;
+		}
+	}
+
+	LookupOpenSimplexNoise(long seed, PermutationTable table)
+	{
+		super(seed, table);
+	}
+
+	@Override
+	OpenSimplexNoise withTable(PermutationTable table)
+	{
+		return new LookupOpenSimplexNoise(this.getSeed(), table);
+	}
+
+	@Override
+	double evalStretched3D(double x, double y, double z, double xs, double ys, double zs, double[] derivatives, LatticeCache cache)
+	{
+		if (derivatives != null)
+			return super.evalStretched3D(x, y, z, xs, ys, zs, derivatives, cache);
+
+		int xsb = fastFloor(xs);
+		int ysb = fastFloor(ys);
+		int zsb = fastFloor(zs);
+
+		if (cache != null)
+			cache.moveTo(xsb, ysb, zsb);
+
+		double squishOffset = (xsb + ysb + zsb) * SQUISH_CONSTANT_3D;
+		double xins = xs - xsb;
+		double yins = ys - ysb;
+		double zins = zs - zsb;
+		int key = key3D(xins, yins, zins, xins + yins + zins);
+		int start = START_3D[key];
+
+		if (start < 0)
+			return super.evalStretched3D(x, y, z, xs, ys, zs, null, cache);
+
+		double dx0 = x - (xsb + squishOffset);
+		double dy0 = y - (ysb + squishOffset);
+		double dz0 = z - (zsb + squishOffset);
+		double value = 0;
+
+		for (int point = start, end = END_3D[key]; point < end; ++point)
+		{
+			int l = point * 3;
+			int s = l * 3;
+			double dx = ((dx0 - STEPS_3D[s]) - STEPS_3D[s + 1]) - STEPS_3D[s + 2];
+			double dy = ((dy0 - STEPS_3D[s + 3]) - STEPS_3D[s + 4]) - STEPS_3D[s + 5];
+			double dz = ((dz0 - STEPS_3D[s + 6]) - STEPS_3D[s + 7]) - STEPS_3D[s + 8];
+			double attn = 2 - dx * dx - dy * dy - dz * dz;
+
+			if (attn > 0)
+				value += this.contribute(attn, xsb + LATTICE_3D[l], ysb + LATTICE_3D[l + 1], zsb + LATTICE_3D[l + 2], dx, dy, dz, null, cache);
+		}
+
+		return value / NORM_CONSTANT_3D;
+	}
+
+	@Override
+	double eval4D(double x, double y, double z, double w, double[] derivatives)
+	{
+		if (derivatives != null)
+			return super.eval4D(x, y, z, w, derivatives);
+
+		double tx = x + this.offsetX;
+		double ty = y + this.offsetY;
+		double tz = z + this.offsetZ;
+		double tw = w + this.offsetW;
+
+		double stretchOffset = (tx + ty + tz + tw) * STRETCH_CONSTANT_4D;
+		double xs = tx + stretchOffset;
+		double ys = ty + stretchOffset;
+		double zs = tz + stretchOffset;
+		double ws = tw + stretchOffset;
+
+		int xsb = fastFloor(xs);
+		int ysb = fastFloor(ys);
+		int zsb = fastFloor(zs);
+		int wsb = fastFloor(ws);
+
+		double squishOffset = (xsb + ysb + zsb + wsb) * SQUISH_CONSTANT_4D;
+		double xins = xs - xsb;
+		double yins = ys - ysb;
+		double zins = zs - zsb;
+		double wins = ws - wsb;
+		int key = key4D(xins, yins, zins, wins, xins + yins + zins + wins);
+		int start = START_4D[key];
+
+		if (start < 0)
+			return super.eval4D(x, y, z, w, null);
+
+		double dx0 = tx - (xsb + squishOffset);
+		double dy0 = ty - (ysb + squishOffset);
+		double dz0 = tz - (zsb + squishOffset);
+		double dw0 = tw - (wsb + squishOffset);
+		double value = 0;
+
+		for (int point = start, end = END_4D[key]; point < end; ++point)
+		{
+			int l = point * 4;
+			int s = l * 3;
+			double dx = ((dx0 - STEPS_4D[s]) - STEPS_4D[s + 1]) - STEPS_4D[s + 2];
+			double dy = ((dy0 - STEPS_4D[s + 3]) - STEPS_4D[s + 4]) - STEPS_4D[s + 5];
+			double dz = ((dz0 - STEPS_4D[s + 6]) - STEPS_4D[s + 7]) - STEPS_4D[s + 8];
+			double dw = ((dw0 - STEPS_4D[s + 9]) - STEPS_4D[s + 10]) - STEPS_4D[s + 11];
+			double attn = 2 - dx * dx - dy * dy - dz * dz - dw * dw;
+
+			if (attn > 0)
+				value += this.contribute(attn, xsb + LATTICE_4D[l], ysb + LATTICE_4D[l + 1], zsb + LATTICE_4D[l + 2], wsb + LATTICE_4D[l + 3], dx, dy, dz, dw, null);
+		}
+
+		return value / NORM_CONSTANT_4D;
+	}
+
+	/**
+	 * Replays the region and closest vertex decisions of
+	 * {@link OpenSimplexNoise#evalStretched3D(double, double, double, double, double, double, double[], OpenSimplexNoise.LatticeCache)}
+	 * with the same comparisons, so ties break the same way.
+	 *
+	 * @return the case in bits 8 and up, and the points the case depends on
+	 *         below.
+	 */
+	static int key3D(double xins, double yins, double zins, double inSum)
+	{
+		if (inSum <= 1)
+		{
+			int aPoint = 0x01, bPoint = 0x02;
+			double aScore = xins, bScore = yins;
+
+			if (aScore >= bScore && zins > bScore)
+			{
+				bScore = zins;
+				bPoint = 0x04;
+			}
+			else if (aScore < bScore && zins > aScore)
+			{
+				aScore = zins;
+				aPoint = 0x04;
+			}
+
+			double wins = 1 - inSum;
+
+			if (wins > aScore || wins > bScore)
+				return bScore > aScore ? bPoint : aPoint;
+
+			return 1 << 8 | aPoint | bPoint;
+		}
+		else if (inSum >= 2)
+		{
+			int aPoint = 0x06, bPoint = 0x05;
+			double aScore = xins, bScore = yins;
+
+			if (aScore <= bScore && zins < bScore)
+			{
+				bScore = zins;
+				bPoint = 0x03;
+			}
+			else if (aScore > bScore && zins < aScore)
+			{
+				aScore = zins;
+				aPoint = 0x03;
+			}
+
+			double wins = 3 - inSum;
+
+			if (wins < aScore || wins < bScore)
+				return 2 << 8 | (bScore < aScore ? bPoint : aPoint);
+
+			return 3 << 8 | (aPoint & bPoint);
+		}
+		else
+		{
+			int aPoint, bPoint;
+			double aScore, bScore;
+			boolean aIsFurtherSide, bIsFurtherSide;
+
+			double p1 = xins + yins;
+
+			if (p1 > 1)
+			{
+				aScore = p1 - 1;
+				aPoint = 0x03;
+				aIsFurtherSide = true;
+			}
+			else
+			{
+				aScore = 1 - p1;
+				aPoint = 0x04;
+				aIsFurtherSide = false;
+			}
+
+			double p2 = xins + zins;
+
+			if (p2 > 1)
+			{
+				bScore = p2 - 1;
+				bPoint = 0x05;
+				bIsFurtherSide = true;
+			}
+			else
+			{
+				bScore = 1 - p2;
+				bPoint = 0x02;
+				bIsFurtherSide = false;
+			}
+
+			double p3 = yins + zins;
+			boolean further = p3 > 1;
+			double score = further ? p3 - 1 : 1 - p3;
+
+			if (aScore <= bScore && aScore < score)
+			{
+				aPoint = further ? 0x06 : 0x01;
+				aIsFurtherSide = further;
+			}
+			else if (aScore > bScore && bScore < score)
+			{
+				bPoint = further ? 0x06 : 0x01;
+				bIsFurtherSide = further;
+			}
+
+			if (aIsFurtherSide == bIsFurtherSide)
+				return aIsFurtherSide ? 4 << 8 | (aPoint & bPoint) : 5 << 8 | (aPoint | bPoint);
+
+			return aIsFurtherSide ? 6 << 8 | aPoint << 4 | bPoint : 6 << 8 | bPoint << 4 | aPoint;
+		}
+	}
+
+	/**
+	 * Replays the region and closest vertex decisions of
+	 * {@link OpenSimplexNoise#eval4D(double, double, double, double, double[])}
+	 * with the same comparisons, so ties break the same way.
+	 *
+	 * @return the case in bits 8 and up, and the points the case depends on
+	 *         below.
+	 */
+	static int key4D(double xins, double yins, double zins, double wins, double inSum)
+	{
+		if (inSum <= 1)
+		{
+			int aPoint = 0x01, bPoint = 0x02;
+			double aScore = xins, bScore = yins;
+
+			if (aScore >= bScore && zins > bScore)
+			{
+				bScore = zins;
+				bPoint = 0x04;
+			}
+			else if (aScore < bScore && zins > aScore)
+			{
+				aScore = zins;
+				aPoint = 0x04;
+			}
+
+			if (aScore >= bScore && wins > bScore)
+			{
+				bScore = wins;
+				bPoint = 0x08;
+			}
+			else if (aScore < bScore && wins > aScore)
+			{
+				aScore = wins;
+				aPoint = 0x08;
+			}
+
+			double uins = 1 - inSum;
+
+			if (uins > aScore || uins > bScore)
+				return bScore > aScore ? bPoint : aPoint;
+
+			return 1 << 8 | aPoint | bPoint;
+		}
+		else if (inSum >= 3)
+		{
+			int aPoint = 0x0E, bPoint = 0x0D;
+			double aScore = xins, bScore = yins;
+
+			if (aScore <= bScore && zins < bScore)
+			{
+				bScore = zins;
+				bPoint = 0x0B;
+			}
+			else if (aScore > bScore && zins < aScore)
+			{
+				aScore = zins;
+				aPoint = 0x0B;
+			}
+
+			if (aScore <= bScore && wins < bScore)
+			{
+				bScore = wins;
+				bPoint = 0x07;
+			}
+			else if (aScore > bScore && wins < aScore)
+			{
+				aScore = wins;
+				aPoint = 0x07;
+			}
+
+			double uins = 4 - inSum;
+
+			if (uins < aScore || uins < bScore)
+				return 2 << 8 | (bScore < aScore ? bPoint : aPoint);
+
+			return 3 << 8 | (aPoint & bPoint);
+		}
+		else if (inSum <= 2)
+		{
+			int aPoint, bPoint;
+			double aScore, bScore;
+			boolean aIsBiggerSide = true, bIsBiggerSide = true;
+
+			if (xins + yins > zins + wins)
+			{
+				aScore = xins + yins;
+				aPoint = 0x03;
+			}
+			else
+			{
+				aScore = zins + wins;
+				aPoint = 0x0C;
+			}
+
+			if (xins + zins > yins + wins)
+			{
+				bScore = xins + zins;
+				bPoint = 0x05;
+			}
+			else
+			{
+				bScore = yins + wins;
+				bPoint = 0x0A;
+			}
+
+			boolean diagonal = xins + wins > yins + zins;
+			double score = diagonal ? xins + wins : yins + zins;
+
+			if (aScore >= bScore && score > bScore)
+			{
+				bScore = score;
+				bPoint = diagonal ? 0x09 : 0x06;
+			}
+			else if (aScore < bScore && score > aScore)
+			{
+				aScore = score;
+				aPoint = diagonal ? 0x09 : 0x06;
+			}
+
+			double p1 = 2 - inSum + xins;
+
+			if (aScore >= bScore && p1 > bScore)
+			{
+				bScore = p1;
+				bPoint = 0x01;
+				bIsBiggerSide = false;
+			}
+			else if (aScore < bScore && p1 > aScore)
+			{
+				aScore = p1;
+				aPoint = 0x01;
+				aIsBiggerSide = false;
+			}
+
+			double p2 = 2 - inSum + yins;
+
+			if (aScore >= bScore && p2 > bScore)
+			{
+				bScore = p2;
+				bPoint = 0x02;
+				bIsBiggerSide = false;
+			}
+			else if (aScore < bScore && p2 > aScore)
+			{
+				aScore = p2;
+				aPoint = 0x02;
+				aIsBiggerSide = false;
+			}
+
+			double p3 = 2 - inSum + zins;
+
+			if (aScore >= bScore && p3 > bScore)
+			{
+				bScore = p3;
+				bPoint = 0x04;
+				bIsBiggerSide = false;
+			}
+			else if (aScore < bScore && p3 > aScore)
+			{
+				aScore = p3;
+				aPoint = 0x04;
+				aIsBiggerSide = false;
+			}
+
+			double p4 = 2 - inSum + wins;
+
+			if (aScore >= bScore && p4 > bScore)
+			{
+				bScore = p4;
+				bPoint = 0x08;
+				bIsBiggerSide = false;
+			}
+			else if (aScore < bScore && p4 > aScore)
+			{
+				aScore = p4;
+				aPoint = 0x08;
+				aIsBiggerSide = false;
+			}
+
+			if (aIsBiggerSide == bIsBiggerSide)
+				return aIsBiggerSide ? 4 << 8 | (aPoint | bPoint) << 4 | (aPoint & bPoint) : 5 << 8 | (aPoint | bPoint);
+
+			return aIsBiggerSide ? 6 << 8 | aPoint << 4 | bPoint : 6 << 8 | bPoint << 4 | aPoint;
+		}
+		else
+		{
+			int aPoint, bPoint;
+			double aScore, bScore;
+			boolean aIsBiggerSide = true, bIsBiggerSide = true;
+
+			if (xins + yins < zins + wins)
+			{
+				aScore = xins + yins;
+				aPoint = 0x0C;
+			}
+			else
+			{
+				aScore = zins + wins;
+				aPoint = 0x03;
+			}
+
+			if (xins + zins < yins + wins)
+			{
+				bScore = xins + zins;
+				bPoint = 0x0A;
+			}
+			else
+			{
+				bScore = yins + wins;
+				bPoint = 0x05;
+			}
+
+			boolean diagonal = xins + wins < yins + zins;
+			double score = diagonal ? xins + wins : yins + zins;
+
+			if (aScore <= bScore && score < bScore)
+			{
+				bScore = score;
+				bPoint = diagonal ? 0x06 : 0x09;
+			}
+			else if (aScore > bScore && score < aScore)
+			{
+				aScore = score;
+				aPoint = diagonal ? 0x06 : 0x09;
+			}
+
+			double p1 = 3 - inSum + xins;
+
+			if (aScore <= bScore && p1 < bScore)
+			{
+				bScore = p1;
+				bPoint = 0x0E;
+				bIsBiggerSide = false;
+			}
+			else if (aScore > bScore && p1 < aScore)
+			{
+				aScore = p1;
+				aPoint = 0x0E;
+				aIsBiggerSide = false;
+			}
+
+			double p2 = 3 - inSum + yins;
+
+			if (aScore <= bScore && p2 < bScore)
+			{
+				bScore = p2;
+				bPoint = 0x0D;
+				bIsBiggerSide = false;
+			}
+			else if (aScore > bScore && p2 < aScore)
+			{
+				aScore = p2;
+				aPoint = 0x0D;
+				aIsBiggerSide = false;
+			}
+
+			double p3 = 3 - inSum + zins;
+
+			if (aScore <= bScore && p3 < bScore)
+			{
+				bScore = p3;
+				bPoint = 0x0B;
+				bIsBiggerSide = false;
+			}
+			else if (aScore > bScore && p3 < aScore)
+			{
+				aScore = p3;
+				aPoint = 0x0B;
+				aIsBiggerSide = false;
+			}
+
+			double p4 = 3 - inSum + wins;
+
+			if (aScore <= bScore && p4 < bScore)
+			{
+				bScore = p4;
+				bPoint = 0x07;
+				bIsBiggerSide = false;
+			}
+			else if (aScore > bScore && p4 < aScore)
+			{
+				aScore = p4;
+				aPoint = 0x07;
+				aIsBiggerSide = false;
+			}
+
+			if (aIsBiggerSide == bIsBiggerSide)
+				return aIsBiggerSide ? 7 << 8 | (aPoint & bPoint) << 4 | (aPoint | bPoint) : 8 << 8 | (aPoint & bPoint);
+
+			return aIsBiggerSide ? 9 << 8 | aPoint << 4 | bPoint : 9 << 8 | bPoint << 4 | aPoint;
+		}
+	}
+}
@@ -6,5 +6,170 @@ public interface NoiseGenerator
 
 	double eval(double x, double y, double z);
 
+	/**
+	 * Evaluates 4D noise. Not every generator has a 4D version.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the generator has no 4D noise.
+	 */
+	default double eval(double x, double y, double z, double w)
+	{
+		throw new UnsupportedOperationException(this.getClass().getSimpleName() + " has no 4D noise");
+	}
+
 	long getSeed();
+
+	/**
+	 * Writes a range of the noise over the box from (minX, minY) to (maxX, maxY)
+	 * into out[0] (minimum) and out[1] (maximum). Every value eval can return
+	 * inside the box should lie in the range, but the range may be wider than
+	 * the values actually reached. The built-in gradient noises derive their
+	 * ranges from empirical bounds with a safety margin, see
+	 * {@link OpenSimplexNoise#BOUND_MARGIN}, rather than proven ones.
+	 * Generators that cannot bound themselves report an infinite range.
+	 *
+	 * @param out
+	 *            the array to write the range into, at least 2 long.
+	 */
+	default void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+	{
+		out[0] = Double.NEGATIVE_INFINITY;
+		out[1] = Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Writes a range of the noise over the box from (minX, minY,
+	 * minZ) to (maxX, maxY, maxZ) into out[0] (minimum) and out[1] (maximum). See
+	 * {@link #bounds(double, double, double, double, double[])}.
+	 *
+	 * @param out
+	 *            the array to write the range into, at least 2 long.
+	 */
+	default void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out)
+	{
+		out[0] = Double.NEGATIVE_INFINITY;
+		out[1] = Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Writes a range of the samples of a 3D grid fill, using the layout of
+	 * {@link #fill(double[], double, double, double, double, double, double, int, int, int)},
+	 * into out[0] (minimum) and out[1] (maximum). By default this bounds the box
+	 * spanned by the samples. Generators whose fills read the noise outside that
+	 * box should override it.
+	 *
+	 * @param out
+	 *            the array to write the range into, at least 2 long.
+	 */
+	default void fillBounds(double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ, double[] out)
+	{
+		double endX = x + (sizeX - 1) * stepX;
+		double endY = y + (sizeY - 1) * stepY;
+		double endZ = z + (sizeZ - 1) * stepZ;
+
+		this.bounds(Math.min(x, endX), Math.min(y, endY), Math.min(z, endZ), Math.max(x, endX), Math.max(y, endY), Math.max(z, endZ), out);
+	}
+
+	/**
+	 * Fills the buffer with samples of a regular 2D grid. Sample (i, j) is taken
+	 * at (x + i * stepX, y + j * stepY) and stored at index i * sizeY + j.
+	 *
+	 * @param buffer
+	 *            the buffer to fill, at least sizeX * sizeY long.
+	 */
+	default void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			double sampleX = x + i * stepX;
+
+			for (int j = 0; j < sizeY; ++j)
+				buffer[index++] = this.eval(sampleX, y + j * stepY);
+		}
+	}
+
+	/**
+	 * Fills the buffer with samples of a regular 3D grid. Sample (i, j, k) is
+	 * taken at (x + i * stepX, y + j * stepY, z + k * stepZ) and stored at index
+	 * (i * sizeY + j) * sizeZ + k.
+	 *
+	 * @param buffer
+	 *            the buffer to fill, at least sizeX * sizeY * sizeZ long.
+	 */
+	default void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			double sampleX = x + i * stepX;
+
+			for (int j = 0; j < sizeY; ++j)
+			{
+				double sampleY = y + j * stepY;
+
+				for (int k = 0; k < sizeZ; ++k)
+					buffer[index++] = this.eval(sampleX, sampleY, z + k * stepZ);
+			}
+		}
+	}
+
+	/**
+	 * Fills the buffer with a vertical column of samples at fixed x and z.
+	 * Sample j is taken at (x, y + j * stepY, z) and stored at index j, the
+	 * layout of a 3D grid one sample wide along x and z.
+	 *
+	 * @param buffer
+	 *            the buffer to fill, at least sizeY long.
+	 */
+	default void fillColumn(double[] buffer, double x, double y, double z, double stepY, int sizeY)
+	{
+		this.fill(buffer, x, y, z, 0D, stepY, 0D, 1, sizeY, 1);
+	}
+
+	/**
+	 * Fills a float buffer with samples of a regular 2D grid, using the layout of
+	 * {@link #fill(double[], double, double, double, double, int, int)}. By
+	 * default this fills a per-thread scratch double buffer, reused across
+	 * calls, and narrows it, so that generators keep their bulk paths.
+	 * Generators that can write float samples directly should override it.
+	 *
+	 * @param buffer
+	 *            the buffer to fill, at least sizeX * sizeY long.
+	 */
+	default void fill(float[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		int size = sizeX * sizeY;
+		double[] samples = FillScratch.doubles(size);
+
+		this.fill(samples, x, y, stepX, stepY, sizeX, sizeY);
+
+		for (int i = 0; i < size; ++i)
+			buffer[i] = (float) samples[i];
+
+		FillScratch.release(samples);
+	}
+
+	/**
+	 * Fills a float buffer with samples of a regular 3D grid, using the layout of
+	 * {@link #fill(double[], double, double, double, double, double, double, int, int, int)}.
+	 * See {@link #fill(float[], double, double, double, double, int, int)}.
+	 *
+	 * @param buffer
+	 *            the buffer to fill, at least sizeX * sizeY * sizeZ long.
+	 */
+	default void fill(float[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		int size = sizeX * sizeY * sizeZ;
+		double[] samples = FillScratch.doubles(size);
+
+		this.fill(samples, x, y, z, stepX, stepY, stepZ, sizeX, sizeY, sizeZ);
+
+		for (int i = 0; i < size; ++i)
+			buffer[i] = (float) samples[i];
+
+		FillScratch.release(samples);
+	}
 }
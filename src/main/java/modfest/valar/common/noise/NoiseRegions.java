@@ -0,0 +1,164 @@
+package modfest.valar.common.noise;
+
+/**
+ * Splits a box into regions that lie wholly above or wholly below a threshold,
+ * using {@link NoiseGenerator#bounds(double, double, double, double, double[])}.
+ * Boxes whose range straddles the threshold are halved along each axis until
+ * they are no larger than the minimum size, so only those leaves need sampling
+ * block by block. The classification is only as reliable as the noise's
+ * bounds, which for the built-in gradient noises are empirical with a safety
+ * margin, see {@link OpenSimplexNoise#BOUND_MARGIN}.
+ */
+public final class NoiseRegions
+{
+	private NoiseRegions() {}
+
+	public enum Classification
+	{
+		/**
+		 * The noise is above the threshold everywhere in the region.
+		 */
+		ABOVE,
+		/**
+		 * The noise is at or below the threshold everywhere in the region.
+		 */
+		BELOW,
+		/**
+		 * The noise may cross the threshold within the region, which is no larger
+		 * than the minimum size.
+		 */
+		STRADDLING;
+	}
+
+	@FunctionalInterface
+	public interface Visitor2D
+	{
+		void visit(double minX, double minY, double maxX, double maxY, Classification classification);
+	}
+
+	@FunctionalInterface
+	public interface Visitor3D
+	{
+		void visit(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, Classification classification);
+	}
+
+	/**
+	 * Visits regions covering the box, each classified against the threshold.
+	 *
+	 * @param noise
+	 *            the noise to classify.
+	 * @param threshold
+	 *            the threshold to compare against.
+	 * @param minSize
+	 *            the size along each axis below which straddling boxes are no
+	 *            longer split.
+	 * @param visitor
+	 *            receives each region.
+	 */
+	public static void subdivide(NoiseGenerator noise, double threshold, double minSize, double minX, double minY, double maxX, double maxY, Visitor2D visitor)
+	{
+		subdivide(noise, threshold, minSize, minX, minY, maxX, maxY, visitor, new double[2]);
+	}
+
+	/**
+	 * Visits regions covering the box, each classified against the threshold.
+	 *
+	 * @param noise
+	 *            the noise to classify.
+	 * @param threshold
+	 *            the threshold to compare against.
+	 * @param minSize
+	 *            the size along each axis below which straddling boxes are no
+	 *            longer split.
+	 * @param visitor
+	 *            receives each region.
+	 */
+	public static void subdivide(NoiseGenerator noise, double threshold, double minSize, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, Visitor3D visitor)
+	{
+		subdivide(noise, threshold, minSize, minX, minY, minZ, maxX, maxY, maxZ, visitor, new double[2]);
+	}
+
+	private static void subdivide(NoiseGenerator noise, double threshold, double minSize, double minX, double minY, double maxX, double maxY, Visitor2D visitor, double[] range)
+	{
+		noise.bounds(minX, minY, maxX, maxY, range);
+
+		if (range[0] > threshold)
+			visitor.visit(minX, minY, maxX, maxY, Classification.ABOVE);
+		else if (range[1] <= threshold)
+			visitor.visit(minX, minY, maxX, maxY, Classification.BELOW);
+		else
+		{
+			boolean splitX = maxX - minX > minSize;
+			boolean splitY = maxY - minY > minSize;
+
+			if (!splitX && !splitY)
+			{
+				visitor.visit(minX, minY, maxX, maxY, Classification.STRADDLING);
+				return;
+			}
+
+			double midX = splitX ? (minX + maxX) * 0.5D : maxX;
+			double midY = splitY ? (minY + maxY) * 0.5D : maxY;
+
+			for (int a = 0; a < (splitX ? 2 : 1); ++a)
+			{
+				double x0 = a == 0 ? minX : midX;
+				double x1 = a == 0 ? midX : maxX;
+
+				for (int b = 0; b < (splitY ? 2 : 1); ++b)
+				{
+					double y0 = b == 0 ? minY : midY;
+					double y1 = b == 0 ? midY : maxY;
+
+					subdivide(noise, threshold, minSize, x0, y0, x1, y1, visitor, range);
+				}
+			}
+		}
+	}
+
+	private static void subdivide(NoiseGenerator noise, double threshold, double minSize, double minX, double minY, double minZ, double maxX, double maxY, double maxZ, Visitor3D visitor, double[] range)
+	{
+		noise.bounds(minX, minY, minZ, maxX, maxY, maxZ, range);
+
+		if (range[0] > threshold)
+			visitor.visit(minX, minY, minZ, maxX, maxY, maxZ, Classification.ABOVE);
+		else if (range[1] <= threshold)
+			visitor.visit(minX, minY, minZ, maxX, maxY, maxZ, Classification.BELOW);
+		else
+		{
+			boolean splitX = maxX - minX > minSize;
+			boolean splitY = maxY - minY > minSize;
+			boolean splitZ = maxZ - minZ > minSize;
+
+			if (!splitX && !splitY && !splitZ)
+			{
+				visitor.visit(minX, minY, minZ, maxX, maxY, maxZ, Classification.STRADDLING);
+				return;
+			}
+
+			double midX = splitX ? (minX + maxX) * 0.5D : maxX;
+			double midY = splitY ? (minY + maxY) * 0.5D : maxY;
+			double midZ = splitZ ? (minZ + maxZ) * 0.5D : maxZ;
+
+			for (int a = 0; a < (splitX ? 2 : 1); ++a)
+			{
+				double x0 = a == 0 ? minX : midX;
+				double x1 = a == 0 ? midX : maxX;
+
+				for (int b = 0; b < (splitY ? 2 : 1); ++b)
+				{
+					double y0 = b == 0 ? minY : midY;
+					double y1 = b == 0 ? midY : maxY;
+
+					for (int c = 0; c < (splitZ ? 2 : 1); ++c)
+					{
+						double z0 = c == 0 ? minZ : midZ;
+						double z1 = c == 0 ? midZ : maxZ;
+
+						subdivide(noise, threshold, minSize, x0, y0, z0, x1, y1, z1, visitor, range);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package modfest.valar.common.noise;
+
+import java.util.Arrays;
+
+/**
+ * 2D noise baked once into a square, power of two sized tile of floats and
+ * sampled from it, for cosmetic and low frequency fields where a few array
+ * reads are enough and a full noise evaluation per sample is not worth it.
+ * Texel (i, j) holds the source at (i * period / size, j * period / size) and
+ * is stored at index i * size + j. Lookups wrap around with a mask, so the
+ * texture repeats every period along both axes.
+ * <p>
+ * The wrap is only seamless if the source repeats with the same period.
+ * {@link #tileable(NoiseGenerator, int, double, Interpolation)} bakes through
+ * a {@link TileableNoiseGenerator}, which does.
+ * <p>
+ * In 3D the texture is extruded along z: z is ignored.
+ */
+public class NoiseTexture implements NoiseGenerator
+{
+	/**
+	 * How texels are interpolated.
+	 */
+	public enum Interpolation
+	{
+		/**
+		 * Bilinear interpolation of the 4 surrounding texels.
+		 */
+		BILINEAR,
+		/**
+		 * Catmull-Rom interpolation of the 16 nearest texels. Smooth, and
+		 * overshoots the texels slightly.
+		 */
+		BICUBIC;
+	}
+
+	// The largest sum of the positive 2D Catmull-Rom weights, less one, in the middle of a texel.
+	private static final double BICUBIC_OVERSHOOT = 0.28125D;
+
+	private final long seed;
+	private final int size, mask, shift;
+	private final double period, scale;
+	private final Interpolation interpolation;
+	private final float[] texels;
+	private final float min, max;
+
+	/**
+	 * Bakes the texture from the source's 2D noise.
+	 *
+	 * @param size
+	 *            the number of texels along each axis, a power of two.
+	 * @param period
+	 *            the distance covered by the texture along each axis.
+	 */
+	public NoiseTexture(NoiseGenerator source, int size, double period, Interpolation interpolation)
+	{
+		if (size <= 0 || (size & (size - 1)) != 0)
+			throw new IllegalArgumentException("Size must be a power of two");
+		if (!(period > 0D))
+			throw new IllegalArgumentException("Period must be positive");
+
+		this.seed = source.getSeed();
+		this.size = size;
+		this.mask = size - 1;
+		this.shift = Integer.numberOfTrailingZeros(size);
+		this.period = period;
+		this.scale = size / period;
+		this.interpolation = interpolation;
+		this.texels = new float[size * size];
+
+		source.fill(this.texels, 0D, 0D, period / size, period / size, size, size);
+
+		float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+
+		for (float texel : this.texels)
+		{
+			min = Math.min(min, texel);
+			max = Math.max(max, texel);
+		}
+
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Bakes a seamless texture from the 4D noise of the source, wrapped onto a
+	 * torus with the period of the texture. 4D OpenSimplex noise bakes several
+	 * times faster from the {@link OpenSimplexNoise.Implementation#LOOKUP}
+	 * implementation.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the source has no 4D noise.
+	 */
+	public static NoiseTexture tileable(NoiseGenerator source, int size, double period, Interpolation interpolation)
+	{
+		return new NoiseTexture(new TileableNoiseGenerator(source, period, period), size, period, interpolation);
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	public int getSize()
+	{
+		return this.size;
+	}
+
+	public double getPeriod()
+	{
+		return this.period;
+	}
+
+	public Interpolation getInterpolation()
+	{
+		return this.interpolation;
+	}
+
+	/**
+	 * @return the texel at (i, j), wrapped around into the texture.
+	 */
+	public float texel(int i, int j)
+	{
+		return this.texels[((i & this.mask) << this.shift) | (j & this.mask)];
+	}
+
+	@Override
+	public double eval(double x, double y)
+	{
+		double u = x * this.scale, v = y * this.scale;
+		int i = fastFloor(u), j = fastFloor(v);
+		double fx = u - i, fy = v - j;
+
+		if (this.interpolation == Interpolation.BILINEAR)
+		{
+			int row0 = (i & this.mask) << this.shift, row1 = ((i + 1) & this.mask) << this.shift;
+			int j0 = j & this.mask, j1 = (j + 1) & this.mask;
+			return this.bilinear(row0, row1, j0, j1, fx, fy);
+		}
+
+		int m = this.mask, s = this.shift;
+		return this.bicubic(((i - 1) & m) << s, (i & m) << s, ((i + 1) & m) << s, ((i + 2) & m) << s,
+				(j - 1) & m, j & m, (j + 1) & m, (j + 2) & m,
+				weight0(fx), weight1(fx), weight2(fx), weight3(fx),
+				weight0(fy), weight1(fy), weight2(fy), weight3(fy));
+	}
+
+	/**
+	 * Samples the texture at (x, y), ignoring z.
+	 */
+	@Override
+	public double eval(double x, double y, double z)
+	{
+		return this.eval(x, y);
+	}
+
+	private double bilinear(int row0, int row1, int j0, int j1, double fx, double fy)
+	{
+		float[] t = this.texels;
+		double a = t[row0 | j0] + fy * (t[row0 | j1] - t[row0 | j0]);
+		double b = t[row1 | j0] + fy * (t[row1 | j1] - t[row1 | j0]);
+		return a + fx * (b - a);
+	}
+
+	private double bicubic(int row0, int row1, int row2, int row3, int j0, int j1, int j2, int j3,
+			double wx0, double wx1, double wx2, double wx3, double wy0, double wy1, double wy2, double wy3)
+	{
+		float[] t = this.texels;
+		double a = (wy0 * t[row0 | j0] + wy1 * t[row0 | j1]) + (wy2 * t[row0 | j2] + wy3 * t[row0 | j3]);
+		double b = (wy0 * t[row1 | j0] + wy1 * t[row1 | j1]) + (wy2 * t[row1 | j2] + wy3 * t[row1 | j3]);
+		double c = (wy0 * t[row2 | j0] + wy1 * t[row2 | j1]) + (wy2 * t[row2 | j2] + wy3 * t[row2 | j3]);
+		double d = (wy0 * t[row3 | j0] + wy1 * t[row3 | j1]) + (wy2 * t[row3 | j2] + wy3 * t[row3 | j3]);
+		return (wx0 * a + wx1 * b) + (wx2 * c + wx3 * d);
+	}
+
+	/**
+	 * The range of the texels, widened by the bicubic overshoot if there is
+	 * one. The box is not taken into account.
+	 */
+	@Override
+	public void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+	{
+		double overshoot = this.interpolation == Interpolation.BICUBIC ? (this.max - this.min) * BICUBIC_OVERSHOOT : 0D;
+		out[0] = this.min - overshoot;
+		out[1] = this.max + overshoot;
+	}
+
+	/**
+	 * The same range as in 2D, as z does not change the samples.
+	 */
+	@Override
+	public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out)
+	{
+		this.bounds(minX, minY, maxX, maxY, out);
+	}
+
+	/**
+	 * Works out the texel offsets and weights once per row and column, and
+	 * matches eval bit for bit.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		boolean bicubic = this.interpolation == Interpolation.BICUBIC;
+		int taps = bicubic ? 4 : 2;
+		int[] columns = new int[sizeY * taps];
+		double[] weightsY = new double[bicubic ? sizeY << 2 : sizeY];
+
+		for (int j = 0; j < sizeY; ++j)
+			this.axis(y + j * stepY, columns, weightsY, j, bicubic, 0);
+
+		int[] rows = new int[taps];
+		double[] weightsX = new double[taps];
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			this.axis(x + i * stepX, rows, weightsX, 0, bicubic, this.shift);
+
+			for (int j = 0; j < sizeY; ++j)
+			{
+				if (bicubic)
+				{
+					int c = j << 2;
+					buffer[index++] = this.bicubic(rows[0], rows[1], rows[2], rows[3], columns[c], columns[c + 1], columns[c + 2], columns[c + 3],
+							weightsX[0], weightsX[1], weightsX[2], weightsX[3], weightsY[c], weightsY[c + 1], weightsY[c + 2], weightsY[c + 3]);
+				}
+				else
+				{
+					buffer[index++] = this.bilinear(rows[0], rows[1], columns[j << 1], columns[(j << 1) | 1], weightsX[0], weightsY[j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fills the x-y plane once and repeats each sample along z.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		int size = sizeX * sizeY;
+		double[] plane = FillScratch.doubles(size);
+		this.fill(plane, x, y, stepX, stepY, sizeX, sizeY);
+
+		int index = 0;
+
+		for (int n = 0; n < size; ++n)
+		{
+			Arrays.fill(buffer, index, index + sizeZ, plane[n]);
+			index += sizeZ;
+		}
+
+		FillScratch.release(plane);
+	}
+
+	/**
+	 * Writes the wrapped, shifted texel offsets and the weights of one
+	 * coordinate into slot n of the arrays. Bilinear weights are just the
+	 * fraction.
+	 */
+	private void axis(double coordinate, int[] offsets, double[] weights, int n, boolean bicubic, int shift)
+	{
+		double u = coordinate * this.scale;
+		int i = fastFloor(u);
+		double f = u - i;
+
+		if (bicubic)
+		{
+			for (int tap = 0; tap < 4; ++tap)
+				offsets[(n << 2) + tap] = ((i - 1 + tap) & this.mask) << shift;
+
+			weights[n << 2] = weight0(f);
+			weights[(n << 2) + 1] = weight1(f);
+			weights[(n << 2) + 2] = weight2(f);
+			weights[(n << 2) + 3] = weight3(f);
+		}
+		else
+		{
+			offsets[n << 1] = (i & this.mask) << shift;
+			offsets[(n << 1) + 1] = ((i + 1) & this.mask) << shift;
+			weights[n] = f;
+		}
+	}
+
+	// Catmull-Rom weights of the texels at -1, 0, 1 and 2 for a sample at t.
+	private static double weight0(double t)
+	{
+		return t * ((2D - t) * t - 1D) * 0.5D;
+	}
+
+	private static double weight1(double t)
+	{
+		return (t * t * (3D * t - 5D) + 2D) * 0.5D;
+	}
+
+	private static double weight2(double t)
+	{
+		return t * ((4D - 3D * t) * t + 1D) * 0.5D;
+	}
+
+	private static double weight3(double t)
+	{
+		return (t - 1D) * t * t * 0.5D;
+	}
+
+	private static int fastFloor(double x)
+	{
+		int xi = (int) x;
+		return x < xi ? xi - 1 : xi;
+	}
+}
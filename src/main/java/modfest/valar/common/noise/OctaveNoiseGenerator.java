@@ -1,6 +1,8 @@
 package modfest.valar.common.noise;
 
+import java.util.Arrays;
 import java.util.function.DoubleFunction;
+import java.util.function.LongFunction;
 
 public class OctaveNoiseGenerator implements NoiseGenerator, DoubleFunction<OctaveNoiseGenerator>
 {
@@ -8,10 +10,41 @@ public class OctaveNoiseGenerator implements NoiseGenerator, DoubleFunction<Octa
 
     public static final double INITIAL_SCALE = 1D;
 
+    /**
+     * Half the width of the box whose range is taken as an octave's range over all of space.
+     */
+    private static final double BOUNDS_EXTENT = 1 << 16;
+
     private final long seed;
     private final int octaves;
 
+    /**
+     * remaining2D[i] and remaining3D[i] bound how far octaves i and up can move the
+     * sum, for deciding threshold queries early. They come from the octaves' own bounds, which
+     * for the built-in engines are empirical with a safety margin, see
+     * {@link OpenSimplexNoise#BOUND_MARGIN}.
+     */
+    private final double[] remaining2D, remaining3D;
+
+    /**
+     * Bounds on the magnitude of each octave in 3D.
+     */
+    private final double[] maxValues3D;
+
     public OctaveNoiseGenerator(long seed, int octaves)
+    {
+        this(seed, octaves, OpenSimplexNoise::shared);
+    }
+
+    /**
+     * Creates octaves evaluated by another engine, such as {@link ValueNoise} or
+     * {@link PerlinNoise} for cheaper detail. Derivatives are only available with
+     * {@link OpenSimplexNoise} engines.
+     *
+     * @param engine
+     *            creates the noise of every octave from the seed.
+     */
+    public OctaveNoiseGenerator(long seed, int octaves, LongFunction<? extends NoiseGenerator> engine)
     {
         this.seed = seed;
         this.octaves = octaves;
@@ -19,7 +52,18 @@ public class OctaveNoiseGenerator implements NoiseGenerator, DoubleFunction<Octa
         generators = new SingleNoiseGenerator[octaves];
 
         for (int i = 0; i < octaves; ++i)
-            generators[i] = new SingleNoiseGenerator(seed, INITIAL_SCALE / Math.pow(2, i), 1D / (i + 1D));
+            generators[i] = new SingleNoiseGenerator(engine.apply(seed), INITIAL_SCALE / Math.pow(2, i), 1D / (i + 1D));
+
+        remaining2D = new double[octaves + 1];
+        remaining3D = new double[octaves + 1];
+        maxValues3D = new double[octaves];
+
+        for (int i = octaves - 1; i >= 0; --i)
+        {
+            maxValues3D[i] = generators[i].maxValue3D();
+            remaining2D[i] = remaining2D[i + 1] + generators[i].maxValue2D();
+            remaining3D[i] = remaining3D[i + 1] + maxValues3D[i];
+        }
     }
 
     @Override
@@ -44,6 +88,300 @@ public class OctaveNoiseGenerator implements NoiseGenerator, DoubleFunction<Octa
         return d0;
     }
 
+    @Override
+    public double eval(double x, double y, double z, double w)
+    {
+        double d0 = 0D;
+
+        for (SingleNoiseGenerator generator : generators)
+            d0 += generator.eval(x, y, z, w);
+
+        return d0;
+    }
+
+    /**
+     * Evaluates the noise and writes its partial derivatives (d/dx, d/dy) into the first two
+     * entries of the given array. Each octave writes into the array in turn, and the sums are
+     * kept in locals, so nothing is allocated.
+     */
+    public double evalWithDerivatives(double x, double y, double[] derivatives)
+    {
+        double d0 = 0D, dx = 0D, dy = 0D;
+
+        for (SingleNoiseGenerator generator : generators)
+        {
+            d0 += generator.evalWithDerivatives(x, y, derivatives);
+            dx += derivatives[0];
+            dy += derivatives[1];
+        }
+
+        derivatives[0] = dx;
+        derivatives[1] = dy;
+        return d0;
+    }
+
+    /**
+     * Evaluates the noise and writes its partial derivatives (d/dx, d/dy, d/dz) into the first
+     * three entries of the given array.
+     */
+    public double evalWithDerivatives(double x, double y, double z, double[] derivatives)
+    {
+        double d0 = 0D, dx = 0D, dy = 0D, dz = 0D;
+
+        for (SingleNoiseGenerator generator : generators)
+        {
+            d0 += generator.evalWithDerivatives(x, y, z, derivatives);
+            dx += derivatives[0];
+            dy += derivatives[1];
+            dz += derivatives[2];
+        }
+
+        derivatives[0] = dx;
+        derivatives[1] = dy;
+        derivatives[2] = dz;
+        return d0;
+    }
+
+    /**
+     * Evaluates the noise and writes its partial derivatives (d/dx, d/dy, d/dz, d/dw) into the
+     * first four entries of the given array.
+     */
+    public double evalWithDerivatives(double x, double y, double z, double w, double[] derivatives)
+    {
+        double d0 = 0D, dx = 0D, dy = 0D, dz = 0D, dw = 0D;
+
+        for (SingleNoiseGenerator generator : generators)
+        {
+            d0 += generator.evalWithDerivatives(x, y, z, w, derivatives);
+            dx += derivatives[0];
+            dy += derivatives[1];
+            dz += derivatives[2];
+            dw += derivatives[3];
+        }
+
+        derivatives[0] = dx;
+        derivatives[1] = dy;
+        derivatives[2] = dz;
+        derivatives[3] = dw;
+        return d0;
+    }
+
+    @Override
+    public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+    {
+        Arrays.fill(buffer, 0, sizeX * sizeY, 0D);
+
+        for (SingleNoiseGenerator generator : generators)
+            generator.add(buffer, x, y, stepX, stepY, sizeX, sizeY);
+    }
+
+    @Override
+    public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+    {
+        Arrays.fill(buffer, 0, sizeX * sizeY * sizeZ, 0D);
+
+        for (SingleNoiseGenerator generator : generators)
+            generator.add(buffer, x, y, z, stepX, stepY, stepZ, sizeX, sizeY, sizeZ);
+    }
+
+    /**
+     * Fills a float buffer octave by octave, rounding each octave's running sum to float
+     * without a temporary double buffer. Samples are within about one float ulp per octave of
+     * eval.
+     */
+    @Override
+    public void fill(float[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+    {
+        Arrays.fill(buffer, 0, sizeX * sizeY, 0F);
+
+        for (SingleNoiseGenerator generator : generators)
+            generator.add(buffer, x, y, stepX, stepY, sizeX, sizeY);
+    }
+
+    /**
+     * Fills a float buffer octave by octave. See
+     * {@link #fill(float[], double, double, double, double, int, int)}.
+     */
+    @Override
+    public void fill(float[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+    {
+        Arrays.fill(buffer, 0, sizeX * sizeY * sizeZ, 0F);
+
+        for (SingleNoiseGenerator generator : generators)
+            generator.add(buffer, x, y, z, stepX, stepY, stepZ, sizeX, sizeY, sizeZ);
+    }
+
+    /**
+     * Fills a vertical column at fixed x and z octave by octave. OpenSimplex octaves work their
+     * scaled x and z out once per column and match eval bit for bit.
+     */
+    @Override
+    public void fillColumn(double[] buffer, double x, double y, double z, double stepY, int sizeY)
+    {
+        Arrays.fill(buffer, 0, sizeY, 0D);
+
+        for (SingleNoiseGenerator generator : generators)
+            generator.addColumn(buffer, x, y, z, stepY, sizeY);
+    }
+
+    /**
+     * Sums the ranges of the octaves over the box. Octaves fine enough to span their whole
+     * range over the box are not evaluated at all.
+     */
+    @Override
+    public void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+    {
+        double min = 0D, max = 0D;
+
+        for (SingleNoiseGenerator generator : generators)
+        {
+            generator.bounds(minX, minY, maxX, maxY, out);
+            min += out[0];
+            max += out[1];
+        }
+
+        out[0] = min;
+        out[1] = max;
+    }
+
+    /**
+     * Sums the ranges of the octaves over the box. Octaves fine enough to span their whole
+     * range over the box are not evaluated at all.
+     */
+    @Override
+    public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out)
+    {
+        double min = 0D, max = 0D;
+
+        for (SingleNoiseGenerator generator : generators)
+        {
+            generator.bounds(minX, minY, minZ, maxX, maxY, maxZ, out);
+            min += out[0];
+            max += out[1];
+        }
+
+        out[0] = min;
+        out[1] = max;
+    }
+
+    /**
+     * Checks whether the noise is above the threshold, evaluating octaves only until the
+     * remaining ones could no longer change the answer going by their magnitude bounds. The
+     * bounds are empirical, so an early answer is only as reliable as they are. The largest
+     * values found by hill climbing are about 9% below them.
+     */
+    public boolean exceeds(double x, double y, double threshold)
+    {
+        return this.decide(x, y, threshold) > 0;
+    }
+
+    /**
+     * Checks whether the noise is above the threshold, evaluating octaves only until the
+     * remaining ones could no longer change the answer. See
+     * {@link #exceeds(double, double, double)}.
+     */
+    public boolean exceeds(double x, double y, double z, double threshold)
+    {
+        return this.decide(x, y, z, threshold) > 0;
+    }
+
+    /**
+     * Fills the mask with whether each sample of a 2D grid is above the threshold, using the
+     * layout of {@link NoiseGenerator#fill(double[], double, double, double, double, int, int)}.
+     *
+     * @return the number of octave evaluations skipped over the whole grid.
+     */
+    public long exceeds(boolean[] mask, double x, double y, double stepX, double stepY, int sizeX, int sizeY, double threshold)
+    {
+        long skipped = 0;
+        int index = 0;
+
+        for (int i = 0; i < sizeX; ++i)
+        {
+            double sampleX = x + i * stepX;
+
+            for (int j = 0; j < sizeY; ++j)
+            {
+                int result = this.decide(sampleX, y + j * stepY, threshold);
+
+                mask[index++] = result > 0;
+                skipped += octaves - Math.abs(result);
+            }
+        }
+
+        return skipped;
+    }
+
+    /**
+     * Fills the mask with whether each sample of a 3D grid is above the threshold, using the
+     * layout of {@link NoiseGenerator#fill(double[], double, double, double, double, double, double, int, int, int)}.
+     *
+     * @return the number of octave evaluations skipped over the whole grid.
+     */
+    public long exceeds(boolean[] mask, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ, double threshold)
+    {
+        long skipped = 0;
+        int index = 0;
+
+        for (int i = 0; i < sizeX; ++i)
+        {
+            double sampleX = x + i * stepX;
+
+            for (int j = 0; j < sizeY; ++j)
+            {
+                double sampleY = y + j * stepY;
+
+                for (int k = 0; k < sizeZ; ++k)
+                {
+                    int result = this.decide(sampleX, sampleY, z + k * stepZ, threshold);
+
+                    mask[index++] = result > 0;
+                    skipped += octaves - Math.abs(result);
+                }
+            }
+        }
+
+        return skipped;
+    }
+
+    /**
+     * @return the number of octaves evaluated, negated if the noise is not above the
+     *         threshold.
+     */
+    private int decide(double x, double y, double threshold)
+    {
+        double d0 = 0D;
+
+        for (int i = 0; i < octaves; ++i)
+        {
+            d0 += generators[i].eval(x, y);
+
+            if (d0 - remaining2D[i + 1] > threshold)
+                return i + 1;
+            if (d0 + remaining2D[i + 1] <= threshold)
+                return -(i + 1);
+        }
+
+        return d0 > threshold ? octaves : -octaves;
+    }
+
+    private int decide(double x, double y, double z, double threshold)
+    {
+        double d0 = 0D;
+
+        for (int i = 0; i < octaves; ++i)
+        {
+            d0 += generators[i].eval(x, y, z);
+
+            if (d0 - remaining3D[i + 1] > threshold)
+                return i + 1;
+            if (d0 + remaining3D[i + 1] <= threshold)
+                return -(i + 1);
+        }
+
+        return d0 > threshold ? octaves : -octaves;
+    }
+
     @Override
     public long getSeed()
     {
@@ -55,20 +393,280 @@ public class OctaveNoiseGenerator implements NoiseGenerator, DoubleFunction<Octa
         return this.octaves;
     }
 
+    /**
+     * @return a bound on the length of the 3D gradient, the sum of the octaves' bounds. Those are
+     *         empirical, see {@link OpenSimplexNoise#MAX_GRADIENT_3D}.
+     * @throws UnsupportedOperationException
+     *             if an octave is not OpenSimplex noise, which is the only engine with a known
+     *             gradient bound.
+     */
+    public double maxGradient3D()
+    {
+        double bound = 0D;
+
+        for (SingleNoiseGenerator generator : generators)
+            bound += generator.maxGradient3D();
+
+        return bound;
+    }
+
+    /**
+     * Works out how far apart two points can be while the 3D noise differs by no more than the
+     * given change between them, as far as the octaves' empirical bounds go. Each octave changes by at most its gradient bound
+     * times the distance, and by at most twice its magnitude bound however far apart the points
+     * are, so fine octaves stop limiting the distance once they have spanned their range. That
+     * allows much longer distances than {@link #maxGradient3D()} alone for changes larger than
+     * the finest octaves.
+     *
+     * @return the distance, infinite if the noise cannot change by that much at all.
+     * @throws UnsupportedOperationException
+     *             if an octave is not OpenSimplex noise.
+     */
+    public double maxDistance3D(double change)
+    {
+        double distance = 0D;
+
+        // Each pass treats the octaves spanning their range at the last distance as spent, and
+        // the rest as linear, which bounds the change from above given the octave bounds, so
+        // every distance found is within them and the passes only grow it.
+        while (true)
+        {
+            double spent = 0D, gradient = 0D;
+
+            for (int i = 0; i < octaves; ++i)
+            {
+                double range = 2D * maxValues3D[i];
+                double octaveGradient = generators[i].maxGradient3D();
+
+                if (octaveGradient * distance >= range)
+                    spent += range;
+                else
+                    gradient += octaveGradient;
+            }
+
+            if (gradient == 0D)
+                return Double.POSITIVE_INFINITY;
+
+            double next = (change - spent) / gradient;
+
+            if (!(next > distance))
+                return distance;
+
+            distance = next;
+        }
+    }
+
+    /**
+     * Creates a sampler for integer block positions at a fixed frequency, with scaled y
+     * coordinates precomputed from minY up to minY + height. See {@link BlockSampler}.
+     */
+    public BlockSampler blockSampler(double frequency, int minY, int height)
+    {
+        return new BlockSampler(frequency, minY, height);
+    }
+
+    /**
+     * Samples the noise at integer block positions times a fixed frequency, matching
+     * eval(x * frequency, y * frequency, z * frequency) bit for bit. The scaled coordinates of
+     * every octave are looked up from a table for y, and kept for the last x and z, so walking
+     * blocks in order costs little more than the octaves' noise. Positions can also be given
+     * packed into a long, so no block position objects are needed.
+     * <p>
+     * The OpenSimplex skew is not split into per-axis shares. Block positions at power of two
+     * scales land exactly on the ties between OpenSimplex regions, where the noise jumps
+     * slightly, so summing the stretch from shares moved about 2% of blocks by up to 2e-4.
+     * Tabulating the translated coordinates and keeping eval's exact sum, with lattice caches
+     * for the coarse octaves, ran 3 to 10% slower than this sampler, as the noise itself
+     * dominates the cost of a block.
+     * <p>
+     * The tables hold the octave scales at creation, so a sampler must be created again after
+     * {@link #apply(double)}. Samplers cache the last position, so are not threadsafe.
+     */
+    public final class BlockSampler
+    {
+        private final double frequency;
+        private final int minY, height;
+
+        /**
+         * The scaled y of every octave for each y in the range, at (y - minY) * octaves + octave.
+         */
+        private final double[] scaledY;
+
+        /**
+         * The scaled x and z of every octave for the last x and z sampled, and the scaled y of a
+         * y outside the table.
+         */
+        private final double[] scaledX, scaledZ, outsideY;
+        private int lastX, lastZ;
+
+        private BlockSampler(double frequency, int minY, int height)
+        {
+            this.frequency = frequency;
+            this.minY = minY;
+            this.height = height;
+            this.scaledY = new double[height * octaves];
+            this.scaledX = new double[octaves];
+            this.scaledZ = new double[octaves];
+            this.outsideY = new double[octaves];
+
+            for (int y = 0; y < height; ++y)
+                this.scale(minY + y, this.scaledY, y * octaves);
+
+            this.lastX = 0;
+            this.lastZ = 0;
+            this.scale(0, this.scaledX, 0);
+            this.scale(0, this.scaledZ, 0);
+        }
+
+        private void scale(int coordinate, double[] out, int offset)
+        {
+            double position = coordinate * this.frequency;
+
+            for (int i = 0; i < octaves; ++i)
+                out[offset + i] = position / generators[i].scale;
+        }
+
+        public double sample(int x, int y, int z)
+        {
+            if (x != this.lastX)
+            {
+                this.lastX = x;
+                this.scale(x, this.scaledX, 0);
+            }
+
+            if (z != this.lastZ)
+            {
+                this.lastZ = z;
+                this.scale(z, this.scaledZ, 0);
+            }
+
+            double[] ys = this.scaledY;
+            int row = y - this.minY;
+
+            if (row < 0 || row >= this.height)
+            {
+                ys = this.outsideY;
+                row = 0;
+                this.scale(y, ys, 0);
+            }
+
+            int offset = row * octaves;
+            double d0 = 0D;
+
+            for (int i = 0; i < octaves; ++i)
+            {
+                SingleNoiseGenerator generator = generators[i];
+                d0 += generator.amplitude * generator.parent.eval(this.scaledX[i], ys[offset + i], this.scaledZ[i]);
+            }
+
+            return d0;
+        }
+
+        /**
+         * Samples the noise at a block position packed as by Minecraft's BlockPos.asLong: x in the
+         * top 26 bits, z in the next 26 and y in the low 12, each two's complement.
+         */
+        public double sample(long pos)
+        {
+            return this.sample((int) (pos >> 38), (int) (pos << 52 >> 52), (int) (pos << 26 >> 38));
+        }
+
+        /**
+         * Samples the 2D noise at a block column, matching eval(x * frequency, z * frequency) bit
+         * for bit.
+         */
+        public double sample(int x, int z)
+        {
+            if (x != this.lastX)
+            {
+                this.lastX = x;
+                this.scale(x, this.scaledX, 0);
+            }
+
+            if (z != this.lastZ)
+            {
+                this.lastZ = z;
+                this.scale(z, this.scaledZ, 0);
+            }
+
+            double d0 = 0D;
+
+            for (int i = 0; i < octaves; ++i)
+            {
+                SingleNoiseGenerator generator = generators[i];
+                d0 += generator.amplitude * generator.parent.eval(this.scaledX[i], this.scaledZ[i]);
+            }
+
+            return d0;
+        }
+
+        public double getFrequency()
+        {
+            return this.frequency;
+        }
+    }
+
     public static class SingleNoiseGenerator implements NoiseGenerator, DoubleFunction<SingleNoiseGenerator>
     {
         private final long seed;
         private double scale, amplitude;
 
-        private final OpenSimplexNoise parent;
+        private final NoiseGenerator parent;
+
+        /**
+         * The parent if it is OpenSimplex noise, which has derivatives and faster grid fills,
+         * otherwise null.
+         */
+        private final OpenSimplexNoise simplex;
 
         public SingleNoiseGenerator(long seed, double scale, double amplitude)
         {
-            this.seed = seed;
+            this(OpenSimplexNoise.shared(seed), scale, amplitude);
+        }
+
+        public SingleNoiseGenerator(NoiseGenerator parent, double scale, double amplitude)
+        {
+            this.seed = parent.getSeed();
             this.scale = scale;
             this.amplitude = amplitude;
-            
-            this.parent = new OpenSimplexNoise(seed);
+
+            this.parent = parent;
+            this.simplex = parent instanceof OpenSimplexNoise ? (OpenSimplexNoise) parent : null;
+        }
+
+        /**
+         * @return a bound on the magnitude of this octave in 2D, infinite if the parent cannot
+         *         bound itself.
+         */
+        double maxValue2D()
+        {
+            double[] range = new double[2];
+            this.parent.bounds(-BOUNDS_EXTENT, -BOUNDS_EXTENT, BOUNDS_EXTENT, BOUNDS_EXTENT, range);
+            return amplitude * Math.max(-range[0], range[1]);
+        }
+
+        /**
+         * @return a bound on the magnitude of this octave in 3D, infinite if the parent cannot
+         *         bound itself.
+         */
+        double maxValue3D()
+        {
+            double[] range = new double[2];
+            this.parent.bounds(-BOUNDS_EXTENT, -BOUNDS_EXTENT, -BOUNDS_EXTENT, BOUNDS_EXTENT, BOUNDS_EXTENT, BOUNDS_EXTENT, range);
+            return amplitude * Math.max(-range[0], range[1]);
+        }
+
+        /**
+         * @return a bound on the length of this octave's 3D gradient.
+         * @throws UnsupportedOperationException
+         *             if the parent is not OpenSimplex noise.
+         */
+        double maxGradient3D()
+        {
+            if (this.simplex == null)
+                throw new UnsupportedOperationException(this.parent.getClass().getSimpleName() + " has no gradient bound");
+
+            return Math.abs(amplitude) * OpenSimplexNoise.MAX_GRADIENT_3D / scale;
         }
 
         @Override
@@ -89,6 +687,288 @@ public class OctaveNoiseGenerator implements NoiseGenerator, DoubleFunction<Octa
             return amplitude * this.parent.eval(x / scale, y / scale, z / scale);
         }
 
+        @Override
+        public double eval(double x, double y, double z, double w)
+        {
+            return amplitude * this.parent.eval(x / scale, y / scale, z / scale, w / scale);
+        }
+
+        /**
+         * Evaluates this octave and writes its partial derivatives into the first two entries
+         * of the given array. The derivatives include the octave's scale and amplitude.
+         */
+        public double evalWithDerivatives(double x, double y, double[] derivatives)
+        {
+            double value = amplitude * this.simplex().evalWithDerivatives(x / scale, y / scale, derivatives);
+            double factor = amplitude / scale;
+
+            derivatives[0] *= factor;
+            derivatives[1] *= factor;
+            return value;
+        }
+
+        /**
+         * Evaluates this octave and writes its partial derivatives into the first three entries
+         * of the given array. The derivatives include the octave's scale and amplitude.
+         */
+        public double evalWithDerivatives(double x, double y, double z, double[] derivatives)
+        {
+            double value = amplitude * this.simplex().evalWithDerivatives(x / scale, y / scale, z / scale, derivatives);
+            double factor = amplitude / scale;
+
+            derivatives[0] *= factor;
+            derivatives[1] *= factor;
+            derivatives[2] *= factor;
+            return value;
+        }
+
+        /**
+         * Evaluates this octave and writes its partial derivatives into the first four entries
+         * of the given array. The derivatives include the octave's scale and amplitude.
+         */
+        public double evalWithDerivatives(double x, double y, double z, double w, double[] derivatives)
+        {
+            double value = amplitude * this.simplex().evalWithDerivatives(x / scale, y / scale, z / scale, w / scale, derivatives);
+            double factor = amplitude / scale;
+
+            derivatives[0] *= factor;
+            derivatives[1] *= factor;
+            derivatives[2] *= factor;
+            derivatives[3] *= factor;
+            return value;
+        }
+
+        private OpenSimplexNoise simplex()
+        {
+            if (this.simplex == null)
+                throw new UnsupportedOperationException("Derivatives need an OpenSimplexNoise engine");
+
+            return this.simplex;
+        }
+
+        @Override
+        public void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+        {
+            this.parent.bounds(minX / scale, minY / scale, maxX / scale, maxY / scale, out);
+            out[0] *= amplitude;
+            out[1] *= amplitude;
+        }
+
+        @Override
+        public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out)
+        {
+            this.parent.bounds(minX / scale, minY / scale, minZ / scale, maxX / scale, maxY / scale, maxZ / scale, out);
+            out[0] *= amplitude;
+            out[1] *= amplitude;
+        }
+
+        @Override
+        public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+        {
+            Arrays.fill(buffer, 0, sizeX * sizeY, 0D);
+            this.add(buffer, x, y, stepX, stepY, sizeX, sizeY);
+        }
+
+        @Override
+        public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+        {
+            Arrays.fill(buffer, 0, sizeX * sizeY * sizeZ, 0D);
+            this.add(buffer, x, y, z, stepX, stepY, stepZ, sizeX, sizeY, sizeZ);
+        }
+
+        /**
+         * Adds this octave's samples of a 2D grid onto the buffer, using the layout of
+         * {@link NoiseGenerator#fill(double[], double, double, double, double, int, int)}.
+         * OpenSimplex octaves are sampled at eval's coordinates, with samples in the same
+         * super-cell sharing its gradients, so match eval bit for bit. Engines other than
+         * OpenSimplex are sampled through their own grid fill, at coordinates that may differ
+         * from eval's in the last bit.
+         */
+        public void add(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+        {
+            if (this.simplex == null)
+            {
+                int size = sizeX * sizeY;
+                double[] samples = FillScratch.doubles(size);
+                this.parent.fill(samples, x / scale, y / scale, stepX / scale, stepY / scale, sizeX, sizeY);
+
+                for (int i = 0; i < size; ++i)
+                    buffer[i] += amplitude * samples[i];
+
+                FillScratch.release(samples);
+                return;
+            }
+
+            OpenSimplexNoise.LatticeCache cache = OpenSimplexNoise.LatticeCache.forStep(stepY / scale);
+            int index = 0;
+
+            for (int i = 0; i < sizeX; ++i)
+            {
+                double scaledX = (x + i * stepX) / scale;
+
+                for (int j = 0; j < sizeY; ++j)
+                    buffer[index++] += amplitude * this.simplex.eval2D(scaledX, (y + j * stepY) / scale, null, cache);
+            }
+        }
+
+        /**
+         * Adds this octave's samples of a 3D grid onto the buffer, using the layout of
+         * {@link NoiseGenerator#fill(double[], double, double, double, double, double, double, int, int, int)}.
+         * See {@link #add(double[], double, double, double, double, int, int)}.
+         */
+        public void add(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+        {
+            if (this.simplex == null)
+            {
+                int size = sizeX * sizeY * sizeZ;
+                double[] samples = FillScratch.doubles(size);
+                this.parent.fill(samples, x / scale, y / scale, z / scale, stepX / scale, stepY / scale, stepZ / scale, sizeX, sizeY, sizeZ);
+
+                for (int i = 0; i < size; ++i)
+                    buffer[i] += amplitude * samples[i];
+
+                FillScratch.release(samples);
+                return;
+            }
+
+            OpenSimplexNoise.LatticeCache cache = OpenSimplexNoise.LatticeCache.forStep(stepZ / scale);
+            int index = 0;
+
+            for (int i = 0; i < sizeX; ++i)
+            {
+                double scaledX = (x + i * stepX) / scale;
+
+                for (int j = 0; j < sizeY; ++j)
+                {
+                    double scaledY = (y + j * stepY) / scale;
+                    double scaledXY = scaledX + scaledY;
+
+                    for (int k = 0; k < sizeZ; ++k)
+                        buffer[index++] += amplitude * this.simplex.eval3D(scaledX, scaledY, (z + k * stepZ) / scale, scaledXY, null, cache);
+                }
+            }
+        }
+
+        @Override
+        public void fill(float[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+        {
+            Arrays.fill(buffer, 0, sizeX * sizeY, 0F);
+            this.add(buffer, x, y, stepX, stepY, sizeX, sizeY);
+        }
+
+        @Override
+        public void fill(float[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+        {
+            Arrays.fill(buffer, 0, sizeX * sizeY * sizeZ, 0F);
+            this.add(buffer, x, y, z, stepX, stepY, stepZ, sizeX, sizeY, sizeZ);
+        }
+
+        /**
+         * Adds this octave's samples of a 2D grid onto a float buffer. Each sample is worked
+         * out in double as in {@link #add(double[], double, double, double, double, int, int)}
+         * and rounded once as it is added.
+         */
+        public void add(float[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+        {
+            if (this.simplex == null)
+            {
+                int size = sizeX * sizeY;
+                float[] samples = FillScratch.floats(size);
+                this.parent.fill(samples, x / scale, y / scale, stepX / scale, stepY / scale, sizeX, sizeY);
+
+                for (int i = 0; i < size; ++i)
+                    buffer[i] += amplitude * samples[i];
+
+                FillScratch.release(samples);
+                return;
+            }
+
+            OpenSimplexNoise.LatticeCache cache = OpenSimplexNoise.LatticeCache.forStep(stepY / scale);
+            int index = 0;
+
+            for (int i = 0; i < sizeX; ++i)
+            {
+                double scaledX = (x + i * stepX) / scale;
+
+                for (int j = 0; j < sizeY; ++j)
+                    buffer[index++] += amplitude * this.simplex.eval2D(scaledX, (y + j * stepY) / scale, null, cache);
+            }
+        }
+
+        /**
+         * Adds this octave's samples of a 3D grid onto a float buffer. See
+         * {@link #add(float[], double, double, double, double, int, int)}.
+         */
+        public void add(float[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+        {
+            if (this.simplex == null)
+            {
+                int size = sizeX * sizeY * sizeZ;
+                float[] samples = FillScratch.floats(size);
+                this.parent.fill(samples, x / scale, y / scale, z / scale, stepX / scale, stepY / scale, stepZ / scale, sizeX, sizeY, sizeZ);
+
+                for (int i = 0; i < size; ++i)
+                    buffer[i] += amplitude * samples[i];
+
+                FillScratch.release(samples);
+                return;
+            }
+
+            OpenSimplexNoise.LatticeCache cache = OpenSimplexNoise.LatticeCache.forStep(stepZ / scale);
+            int index = 0;
+
+            for (int i = 0; i < sizeX; ++i)
+            {
+                double scaledX = (x + i * stepX) / scale;
+
+                for (int j = 0; j < sizeY; ++j)
+                {
+                    double scaledY = (y + j * stepY) / scale;
+                    double scaledXY = scaledX + scaledY;
+
+                    for (int k = 0; k < sizeZ; ++k)
+                        buffer[index++] += amplitude * this.simplex.eval3D(scaledX, scaledY, (z + k * stepZ) / scale, scaledXY, null, cache);
+                }
+            }
+        }
+
+        @Override
+        public void fillColumn(double[] buffer, double x, double y, double z, double stepY, int sizeY)
+        {
+            Arrays.fill(buffer, 0, sizeY, 0D);
+            this.addColumn(buffer, x, y, z, stepY, sizeY);
+        }
+
+        /**
+         * Adds this octave's samples of a vertical column onto the buffer, using the layout of
+         * {@link NoiseGenerator#fillColumn(double[], double, double, double, double, int)}.
+         * OpenSimplex engines are sampled at the same scaled coordinates eval works out, so
+         * samples match eval bit for bit. Other engines are sampled through their own column
+         * fill.
+         */
+        public void addColumn(double[] buffer, double x, double y, double z, double stepY, int sizeY)
+        {
+            if (this.simplex == null)
+            {
+                double[] samples = FillScratch.doubles(sizeY);
+                this.parent.fillColumn(samples, x / scale, y / scale, z / scale, stepY / scale, sizeY);
+
+                for (int j = 0; j < sizeY; ++j)
+                    buffer[j] += amplitude * samples[j];
+
+                FillScratch.release(samples);
+                return;
+            }
+
+            double scaledX = x / scale, scaledZ = z / scale;
+
+            for (int j = 0; j < sizeY; ++j)
+            {
+                double scaledY = (y + j * stepY) / scale;
+                buffer[j] += amplitude * this.simplex.eval3D(scaledX, scaledY, scaledZ, scaledX + scaledY, null, null);
+            }
+        }
+
         @Override
         public SingleNoiseGenerator apply(double value)
         {
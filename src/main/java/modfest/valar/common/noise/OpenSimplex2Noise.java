@@ -0,0 +1,333 @@
+package modfest.valar.common.noise;
+
+/**
+ * Base of the OpenSimplex2 noises, K.jpg's successors to
+ * {@link OpenSimplexNoise}. 2D noise is evaluated on the triangular lattice,
+ * 3D noise on the body-centred cubic lattice formed by two offset copies of
+ * the cubic lattice, and 4D noise on five offset copies of the A4 lattice.
+ * Lattice points are hashed with the seed into a gradient table, so there are
+ * no permutation tables to build per seed.
+ * <p>
+ * The 3D lattice is rotated so that its main diagonal points along one of the
+ * axes, which hides its cubic grid in slices across that axis. The default,
+ * {@link Orientation#IMPROVE_XZ}, points it along y, so horizontal slices,
+ * which most terrain is built from, look the most isotropic.
+ */
+public abstract class OpenSimplex2Noise implements NoiseGenerator
+{
+	public enum Orientation
+	{
+		/**
+		 * Rotates the lattice so that no axis is preferred.
+		 */
+		FALLBACK,
+		/**
+		 * Points the main diagonal of the lattice along z, for slices in the xy
+		 * plane.
+		 */
+		IMPROVE_XY,
+		/**
+		 * Points the main diagonal of the lattice along y, for slices in the xz
+		 * plane.
+		 */
+		IMPROVE_XZ;
+	}
+
+	static final long PRIME_X = 0x5205402B9270C86FL;
+	static final long PRIME_Y = 0x598CD327003817B5L;
+	static final long PRIME_Z = 0x5BCC226E9FA0BACBL;
+	static final long PRIME_W = 0x56CC5227E58F554BL;
+	static final long HASH_MULTIPLIER = 0x53A3F72DEEC546F5L;
+	static final long SEED_FLIP_3D = -0x52D547B2E96ED629L;
+	static final long SEED_OFFSET_4D = 0xE83DC3E0DA7164DL;
+
+	static final double SKEW_2D = 0.366025403784439;
+	static final double UNSKEW_2D = -0.21132486540518713;
+
+	static final double ROOT3OVER3 = 0.577350269189626;
+	static final double FALLBACK_ROTATE_3D = 2.0 / 3.0;
+	static final double ROTATE_3D_ORTHOGONALIZER = UNSKEW_2D;
+
+	static final double SKEW_4D = -0.138196601125011;
+	static final double UNSKEW_4D = 0.309016994374947;
+	static final double LATTICE_STEP_4D = 0.2;
+
+	static final int GRADIENTS_2D_EXPONENT = 7;
+	static final int GRADIENTS_3D_EXPONENT = 8;
+	static final int GRADIENTS_4D_EXPONENT = 8;
+
+	private final long seed;
+	private final Orientation orientation;
+
+	OpenSimplex2Noise(long seed, Orientation orientation)
+	{
+		this.seed = seed;
+		this.orientation = orientation;
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	public Orientation getOrientation()
+	{
+		return this.orientation;
+	}
+
+	@Override
+	public double eval(double x, double y)
+	{
+		double s = SKEW_2D * (x + y);
+		return this.eval2D(this.seed, x + s, y + s);
+	}
+
+	@Override
+	public double eval(double x, double y, double z)
+	{
+		switch (this.orientation)
+		{
+		case IMPROVE_XY:
+		{
+			double xy = x + y;
+			double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+			double zz = z * ROOT3OVER3;
+			return this.eval3D(this.seed, x + s2 + zz, y + s2 + zz, xy * -ROOT3OVER3 + zz);
+		}
+		case IMPROVE_XZ:
+		{
+			double xz = x + z;
+			double s2 = xz * ROTATE_3D_ORTHOGONALIZER;
+			double yy = y * ROOT3OVER3;
+			return this.eval3D(this.seed, x + s2 + yy, xz * -ROOT3OVER3 + yy, z + s2 + yy);
+		}
+		default:
+		{
+			double r = FALLBACK_ROTATE_3D * (x + y + z);
+			return this.eval3D(this.seed, r - x, r - y, r - z);
+		}
+		}
+	}
+
+	@Override
+	public double eval(double x, double y, double z, double w)
+	{
+		double s = SKEW_4D * (x + y + z + w);
+		return this.eval4D(this.seed, x + s, y + s, z + s, w + s);
+	}
+
+	/**
+	 * Evaluates 2D noise at skewed coordinates, in which the triangular lattice
+	 * is the integer grid.
+	 */
+	abstract double eval2D(long seed, double xs, double ys);
+
+	/**
+	 * Evaluates 3D noise at rotated coordinates, in which one copy of the cubic
+	 * lattice is the integer grid and the other is offset by half along every
+	 * axis.
+	 */
+	abstract double eval3D(long seed, double xr, double yr, double zr);
+
+	/**
+	 * Evaluates 4D noise at skewed coordinates, in which one copy of the A4
+	 * lattice is the integer grid and the others are offset by multiples of
+	 * {@link #LATTICE_STEP_4D} along every axis.
+	 */
+	abstract double eval4D(long seed, double xs, double ys, double zs, double ws);
+
+	// Skewing is evaluated per sample exactly as in eval, so that fills match it bit for bit.
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			double xi = x + i * stepX;
+
+			for (int j = 0; j < sizeY; ++j)
+			{
+				double yj = y + j * stepY;
+				double s = SKEW_2D * (xi + yj);
+				buffer[index++] = this.eval2D(this.seed, xi + s, yj + s);
+			}
+		}
+	}
+
+	// The parts of the rotation that only depend on the row are computed once per row. The
+	// rest is evaluated exactly as in eval, so that fills match it bit for bit.
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			double xi = x + i * stepX;
+
+			for (int j = 0; j < sizeY; ++j)
+			{
+				double yj = y + j * stepY;
+
+				switch (this.orientation)
+				{
+				case IMPROVE_XY:
+				{
+					double xy = xi + yj;
+					double s2 = xy * ROTATE_3D_ORTHOGONALIZER;
+					double xs2 = xi + s2, ys2 = yj + s2, zr = xy * -ROOT3OVER3;
+
+					for (int k = 0; k < sizeZ; ++k)
+					{
+						double zz = (z + k * stepZ) * ROOT3OVER3;
+						buffer[index++] = this.eval3D(this.seed, xs2 + zz, ys2 + zz, zr + zz);
+					}
+
+					break;
+				}
+				case IMPROVE_XZ:
+				{
+					double yy = yj * ROOT3OVER3;
+
+					for (int k = 0; k < sizeZ; ++k)
+					{
+						double zk = z + k * stepZ;
+						double xz = xi + zk;
+						double s2 = xz * ROTATE_3D_ORTHOGONALIZER;
+						buffer[index++] = this.eval3D(this.seed, xi + s2 + yy, xz * -ROOT3OVER3 + yy, zk + s2 + yy);
+					}
+
+					break;
+				}
+				default:
+				{
+					double xy = xi + yj;
+
+					for (int k = 0; k < sizeZ; ++k)
+					{
+						double zk = z + k * stepZ;
+						double r = FALLBACK_ROTATE_3D * (xy + zk);
+						buffer[index++] = this.eval3D(this.seed, r - xi, r - yj, r - zk);
+					}
+				}
+				}
+			}
+		}
+	}
+
+	static double gradient(double[] gradients, long seed, long xsvp, long ysvp, double dx, double dy)
+	{
+		long hash = seed ^ xsvp ^ ysvp;
+		hash *= HASH_MULTIPLIER;
+		hash ^= hash >> (64 - GRADIENTS_2D_EXPONENT + 1);
+		int gi = (int) hash & (((1 << GRADIENTS_2D_EXPONENT) - 1) << 1);
+		return gradients[gi] * dx + gradients[gi | 1] * dy;
+	}
+
+	static double gradient(double[] gradients, long seed, long xrvp, long yrvp, long zrvp, double dx, double dy, double dz)
+	{
+		long hash = (seed ^ xrvp) ^ (yrvp ^ zrvp);
+		hash *= HASH_MULTIPLIER;
+		hash ^= hash >> (64 - GRADIENTS_3D_EXPONENT + 2);
+		int gi = (int) hash & (((1 << GRADIENTS_3D_EXPONENT) - 1) << 2);
+		return gradients[gi] * dx + gradients[gi | 1] * dy + gradients[gi | 2] * dz;
+	}
+
+	static double gradient(double[] gradients, long seed, long xsvp, long ysvp, long zsvp, long wsvp, double dx, double dy, double dz, double dw)
+	{
+		long hash = seed ^ (xsvp ^ ysvp) ^ (zsvp ^ wsvp);
+		hash *= HASH_MULTIPLIER;
+		hash ^= hash >> (64 - GRADIENTS_4D_EXPONENT + 2);
+		int gi = (int) hash & (((1 << GRADIENTS_4D_EXPONENT) - 1) << 2);
+		return (gradients[gi] * dx + gradients[gi | 1] * dy) + (gradients[gi | 2] * dz + gradients[gi | 3] * dw);
+	}
+
+	/**
+	 * @return 24 unit gradients, evenly spaced around the circle and offset from
+	 *         the axes, repeated and divided by the normaliser.
+	 */
+	static double[] gradients2D(double normalizer)
+	{
+		double[] gradients = new double[2 << GRADIENTS_2D_EXPONENT];
+
+		for (int i = 0; i < gradients.length; i += 2)
+		{
+			double angle = Math.toRadians(7.5 + 15.0 * ((i >> 1) % 24));
+			gradients[i] = Math.cos(angle) / normalizer;
+			gradients[i + 1] = Math.sin(angle) / normalizer;
+		}
+
+		return gradients;
+	}
+
+	/**
+	 * @return 48 gradients, four around each edge direction of the cube,
+	 *         repeated and divided by the normaliser, padded to four entries
+	 *         each.
+	 */
+	static double[] gradients3D(double normalizer)
+	{
+		final double a = 2.22474487139, b = 3.0862664687972017, c = 1.1721513422464978;
+		double[] directions = new double[48 * 3];
+		int count = 0;
+
+		for (int i = 0; i < 3; ++i)
+		{
+			int j = (i + 1) % 3, k = (i + 2) % 3;
+
+			for (int signs = 0; signs < 4; ++signs)
+			{
+				double si = (signs & 1) == 0 ? 1 : -1, sj = (signs & 2) == 0 ? 1 : -1;
+				double[][] vectors = { { a * si, a * sj, -1 }, { a * si, a * sj, 1 }, { b * si, c * sj, 0 }, { c * si, b * sj, 0 } };
+
+				for (double[] vector : vectors)
+				{
+					directions[count + i] = vector[0];
+					directions[count + j] = vector[1];
+					directions[count + k] = vector[2];
+					count += 3;
+				}
+			}
+		}
+
+		double[] gradients = new double[4 << GRADIENTS_3D_EXPONENT];
+
+		for (int i = 0; i < gradients.length >> 2; ++i)
+		{
+			int d = (i % 48) * 3;
+			gradients[i << 2] = directions[d] / normalizer;
+			gradients[(i << 2) | 1] = directions[d + 1] / normalizer;
+			gradients[(i << 2) | 2] = directions[d + 2] / normalizer;
+		}
+
+		return gradients;
+	}
+
+	/**
+	 * @return the 64 gradients of {@link OpenSimplexNoise}, repeated and divided
+	 *         by the normaliser.
+	 */
+	static double[] gradients4D(double normalizer)
+	{
+		byte[] directions = OpenSimplexNoise.gradients4D;
+		double[] gradients = new double[4 << GRADIENTS_4D_EXPONENT];
+
+		for (int i = 0; i < gradients.length; ++i)
+			gradients[i] = directions[i % directions.length] / normalizer;
+
+		return gradients;
+	}
+
+	static int fastFloor(double x)
+	{
+		int xi = (int) x;
+		return x < xi ? xi - 1 : xi;
+	}
+
+	static int fastRound(double x)
+	{
+		return x < 0 ? (int) (x - 0.5) : (int) (x + 0.5);
+	}
+}
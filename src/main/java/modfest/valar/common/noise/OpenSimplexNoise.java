@@ -16,24 +16,56 @@ package modfest.valar.common.noise;
  *   will be the same when ported to other languages.
  */
  
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import modfest.valar.common.rand.CellHash;
+
 public class OpenSimplexNoise implements NoiseGenerator
 {
 
-	private static final double STRETCH_CONSTANT_2D = -0.211324865405187;    //(1/Math.sqrt(2+1)-1)/2;
-	private static final double SQUISH_CONSTANT_2D = 0.366025403784439;      //(Math.sqrt(2+1)-1)/2;
-	private static final double STRETCH_CONSTANT_3D = -1.0 / 6;              //(1/Math.sqrt(3+1)-1)/3;
-	private static final double SQUISH_CONSTANT_3D = 1.0 / 3;                //(Math.sqrt(3+1)-1)/3;
-	private static final double STRETCH_CONSTANT_4D = -0.138196601125011;    //(1/Math.sqrt(4+1)-1)/4;
-	private static final double SQUISH_CONSTANT_4D = 0.309016994374947;      //(Math.sqrt(4+1)-1)/4;
+	static final double STRETCH_CONSTANT_2D = -0.211324865405187;    //(1/Math.sqrt(2+1)-1)/2;
+	static final double SQUISH_CONSTANT_2D = 0.366025403784439;      //(Math.sqrt(2+1)-1)/2;
+	static final double STRETCH_CONSTANT_3D = -1.0 / 6;              //(1/Math.sqrt(3+1)-1)/3;
+	static final double SQUISH_CONSTANT_3D = 1.0 / 3;                //(Math.sqrt(3+1)-1)/3;
+	static final double STRETCH_CONSTANT_4D = -0.138196601125011;    //(1/Math.sqrt(4+1)-1)/4;
+	static final double SQUISH_CONSTANT_4D = 0.309016994374947;      //(Math.sqrt(4+1)-1)/4;
+	
+	static final double NORM_CONSTANT_2D = 47;
+	static final double NORM_CONSTANT_3D = 103;
+	static final double NORM_CONSTANT_4D = 30;
+	
+	//Empirical bounds, not proven ones. No analytic bound on the magnitude or gradient of the
+	//output is known, so the bounds below are the largest values found by hill climbing from
+	//thousands of random starts, widened by BOUND_MARGIN in case the search missed a higher
+	//peak. Everything built on them (bounds, OctaveNoiseGenerator.exceeds and maxDistance3D,
+	//SectionMask and SurfaceLocator) is only as safe as they are.
+	public static final double BOUND_MARGIN = 1.1;
+	
+	//Bounds on the magnitude of the output. Largest found: 0.866, 0.987 and 1.011.
+	public static final double MAX_VALUE_2D = 0.866 * BOUND_MARGIN;
+	public static final double MAX_VALUE_3D = 0.987 * BOUND_MARGIN;
+	public static final double MAX_VALUE_4D = 1.011 * BOUND_MARGIN;
 	
-	private static final double NORM_CONSTANT_2D = 47;
-	private static final double NORM_CONSTANT_3D = 103;
-	private static final double NORM_CONSTANT_4D = 30;
+	//Lipschitz bounds, i.e. bounds on the length of the gradient from evalWithDerivatives.
+	//Largest found: 2.345, 2.72 and 2.56.
+	public static final double MAX_GRADIENT_2D = 2.345 * BOUND_MARGIN;
+	public static final double MAX_GRADIENT_3D = 2.72 * BOUND_MARGIN;
+	public static final double MAX_GRADIENT_4D = 2.56 * BOUND_MARGIN;
 	
 	private static final long DEFAULT_SEED = 0;
 	
-	private short[] perm;
-	private short[] permGradIndex3D;
+	short[] perm;
+	short[] permGradIndex3D;
+	
+	//Keeps interned tables reachable for as long as an instance uses them.
+	private PermutationTable table;
+	
+	//Input translation of variants. Zero for every other instance.
+	double offsetX, offsetY, offsetZ, offsetW;
 	
 	public OpenSimplexNoise() {
 		this(DEFAULT_SEED);
@@ -86,9 +118,122 @@ public class OpenSimplexNoise implements NoiseGenerator
 		
 	}
 	
+	//A null table leaves the noise without permutation tables, for subclasses that select gradients
+	//without them.
+	OpenSimplexNoise(long seed, PermutationTable table) {
+		this.seed = seed;
+		this.table = table;
+		
+		if (table != null) {
+			this.perm = table.perm;
+			this.permGradIndex3D = table.permGradIndex3D;
+		}
+	}
+	
+	/**
+	 * Gets noise for the given seed that is identical to
+	 * {@link #OpenSimplexNoise(long)}, but shares its permutation tables with
+	 * every other instance obtained here for the same seed. The tables are
+	 * only weakly interned, so they are collected once no instance uses them.
+	 * 
+	 * @param seed
+	 *            the seed value.
+	 * @return the noise.
+	 */
+	public static OpenSimplexNoise shared(long seed)
+	{
+		return shared(seed, Implementation.BRANCHING);
+	}
+	
+	/**
+	 * Gets noise for the given seed like {@link #shared(long)}, evaluated by the
+	 * given implementation. Every implementation produces bit-identical output.
+	 * 
+	 * @param seed
+	 *            the seed value.
+	 * @param implementation
+	 *            how 3D and 4D noise select the lattice points that contribute.
+	 * @return the noise.
+	 */
+	public static OpenSimplexNoise shared(long seed, Implementation implementation)
+	{
+		synchronized (TABLES)
+		{
+			TableReference stale;
+
+			while ((stale = (TableReference) QUEUE.poll()) != null)
+			{
+				if (TABLES.get(stale.seed) == stale)
+					TABLES.remove(stale.seed);
+			}
+
+			TableReference reference = TABLES.get(seed);
+			PermutationTable table = reference == null ? null : reference.get();
+
+			if (table == null)
+			{
+				OpenSimplexNoise noise = new OpenSimplexNoise(seed);
+				table = new PermutationTable(noise.perm, noise.permGradIndex3D);
+				TABLES.put(seed, new TableReference(seed, table));
+			}
+
+			return implementation == Implementation.LOOKUP ? new LookupOpenSimplexNoise(seed, table) : new OpenSimplexNoise(seed, table);
+		}
+	}
+	
+	/**
+	 * Derives a variant of this noise for use as another octave or layer. The
+	 * variant shares this noise's permutation tables instead of shuffling new
+	 * ones, and is instead translated by an offset of up to 256 units per axis
+	 * derived from the seed and index, which is enough for its features not to
+	 * line up with this noise's or with other variants'.
+	 * 
+	 * @param index
+	 *            which variant to derive.
+	 * @return the variant.
+	 */
+	public OpenSimplexNoise variant(int index)
+	{
+		PermutationTable table = this.table == null ? new PermutationTable(this.perm, this.permGradIndex3D) : this.table;
+		OpenSimplexNoise variant = this.withTable(table);
+		long h = CellHash.hash(this.seed, index, 0, 0);
+		long h2 = CellHash.next(h);
+
+		variant.offsetX = this.offsetX + CellHash.highDouble(h) * 256;
+		variant.offsetY = this.offsetY + CellHash.lowDouble(h) * 256;
+		variant.offsetZ = this.offsetZ + CellHash.highDouble(h2) * 256;
+		variant.offsetW = this.offsetW + CellHash.lowDouble(h2) * 256;
+		return variant;
+	}
+	
+	//Creates an instance of the same implementation over the given tables, for variant(int).
+	OpenSimplexNoise withTable(PermutationTable table) {
+		return new OpenSimplexNoise(this.seed, table);
+	}
+	
 	//2D OpenSimplex Noise.
 	public double eval(double x, double y) {
+		return eval2D(x, y, null, null);
+	}
+	
+	//2D OpenSimplex Noise, also writing the partial derivatives (d/dx, d/dy) into the first
+	//two entries of the given array.
+	public double evalWithDerivatives(double x, double y, double[] derivatives) {
+		derivatives[0] = derivatives[1] = 0;
+		double value = eval2D(x, y, derivatives, null);
+		derivatives[0] /= NORM_CONSTANT_2D;
+		derivatives[1] /= NORM_CONSTANT_2D;
+		return value;
+	}
 	
+	//Derivatives of the lattice contributions are accumulated into the array if it isn't null,
+	//and gradients are read through the cache if it isn't null.
+	double eval2D(double x, double y, double[] derivatives, LatticeCache cache) {
+	
+		//Translate variants.
+		x += offsetX;
+		y += offsetY;
+		
 		//Place input coordinates onto grid.
 		double stretchOffset = (x + y) * STRETCH_CONSTANT_2D;
 		double xs = x + stretchOffset;
@@ -97,6 +242,9 @@ public class OpenSimplexNoise implements NoiseGenerator
 		//Floor to get grid coordinates of rhombus (stretched square) super-cell origin.
 		int xsb = fastFloor(xs);
 		int ysb = fastFloor(ys);
+		if (cache != null) {
+			cache.moveTo(xsb, ysb, 0);
+		}
 		
 		//Skew out to get actual coordinates of rhombus origin. We'll need these later.
 		double squishOffset = (xsb + ysb) * SQUISH_CONSTANT_2D;
@@ -125,8 +273,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 		double dy1 = dy0 - 0 - SQUISH_CONSTANT_2D;
 		double attn1 = 2 - dx1 * dx1 - dy1 * dy1;
 		if (attn1 > 0) {
-			attn1 *= attn1;
-			value += attn1 * attn1 * extrapolate(xsb + 1, ysb + 0, dx1, dy1);
+			value += contribute(attn1, xsb + 1, ysb + 0, dx1, dy1, derivatives, cache);
 		}
 
 		//Contribution (0,1)
@@ -134,8 +281,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 		double dy2 = dy0 - 1 - SQUISH_CONSTANT_2D;
 		double attn2 = 2 - dx2 * dx2 - dy2 * dy2;
 		if (attn2 > 0) {
-			attn2 *= attn2;
-			value += attn2 * attn2 * extrapolate(xsb + 0, ysb + 1, dx2, dy2);
+			value += contribute(attn2, xsb + 0, ysb + 1, dx2, dy2, derivatives, cache);
 		}
 		
 		if (inSum <= 1) { //We're inside the triangle (2-Simplex) at (0,0)
@@ -187,15 +333,13 @@ public class OpenSimplexNoise implements NoiseGenerator
 		//Contribution (0,0) or (1,1)
 		double attn0 = 2 - dx0 * dx0 - dy0 * dy0;
 		if (attn0 > 0) {
-			attn0 *= attn0;
-			value += attn0 * attn0 * extrapolate(xsb, ysb, dx0, dy0);
+			value += contribute(attn0, xsb, ysb, dx0, dy0, derivatives, cache);
 		}
 		
 		//Extra Vertex
 		double attn_ext = 2 - dx_ext * dx_ext - dy_ext * dy_ext;
 		if (attn_ext > 0) {
-			attn_ext *= attn_ext;
-			value += attn_ext * attn_ext * extrapolate(xsv_ext, ysv_ext, dx_ext, dy_ext);
+			value += contribute(attn_ext, xsv_ext, ysv_ext, dx_ext, dy_ext, derivatives, cache);
 		}
 		
 		return value / NORM_CONSTANT_2D;
@@ -203,17 +347,53 @@ public class OpenSimplexNoise implements NoiseGenerator
 	
 	//3D OpenSimplex Noise.
 	public double eval(double x, double y, double z) {
+		return eval3D(x, y, z, x + y, null, null);
+	}
 	
+	//3D OpenSimplex Noise, also writing the partial derivatives (d/dx, d/dy, d/dz) into the
+	//first three entries of the given array.
+	public double evalWithDerivatives(double x, double y, double z, double[] derivatives) {
+		derivatives[0] = derivatives[1] = derivatives[2] = 0;
+		double value = eval3D(x, y, z, x + y, derivatives, null);
+		derivatives[0] /= NORM_CONSTANT_3D;
+		derivatives[1] /= NORM_CONSTANT_3D;
+		derivatives[2] /= NORM_CONSTANT_3D;
+		return value;
+	}
+	
+	//3D OpenSimplex Noise, with the x + y part of the stretch offset supplied by the caller
+	//so that grid fills can hoist it out of the z loop. Derivatives of the lattice
+	//contributions are accumulated into the array if it isn't null, and gradients are read
+	//through the cache if it isn't null.
+	double eval3D(double x, double y, double z, double xy, double[] derivatives, LatticeCache cache) {
+	
+		//Translate variants.
+		x += offsetX;
+		y += offsetY;
+		z += offsetZ;
+		xy += offsetX + offsetY;
+		
 		//Place input coordinates on simplectic honeycomb.
-		double stretchOffset = (x + y + z) * STRETCH_CONSTANT_3D;
+		double stretchOffset = (xy + z) * STRETCH_CONSTANT_3D;
 		double xs = x + stretchOffset;
 		double ys = y + stretchOffset;
 		double zs = z + stretchOffset;
 		
+		return evalStretched3D(x, y, z, xs, ys, zs, derivatives, cache);
+	}
+	
+	//3D OpenSimplex Noise from translated input coordinates and their places on the simplectic
+	//honeycomb, so that grid fills can work the stretch out per axis. Gradients are read through
+	//the cache if it isn't null.
+	double evalStretched3D(double x, double y, double z, double xs, double ys, double zs, double[] derivatives, LatticeCache cache) {
+		
 		//Floor to get simplectic honeycomb coordinates of rhombohedron (stretched cube) super-cell origin.
 		int xsb = fastFloor(xs);
 		int ysb = fastFloor(ys);
 		int zsb = fastFloor(zs);
+		if (cache != null) {
+			cache.moveTo(xsb, ysb, zsb);
+		}
 		
 		//Skew out to get actual coordinates of rhombohedron origin. We'll need these later.
 		double squishOffset = (xsb + ysb + zsb) * SQUISH_CONSTANT_3D;
@@ -336,8 +516,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			//Contribution (0,0,0)
 			double attn0 = 2 - dx0 * dx0 - dy0 * dy0 - dz0 * dz0;
 			if (attn0 > 0) {
-				attn0 *= attn0;
-				value += attn0 * attn0 * extrapolate(xsb + 0, ysb + 0, zsb + 0, dx0, dy0, dz0);
+				value += contribute(attn0, xsb + 0, ysb + 0, zsb + 0, dx0, dy0, dz0, derivatives, cache);
 			}
 
 			//Contribution (1,0,0)
@@ -346,8 +525,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz1 = dz0 - 0 - SQUISH_CONSTANT_3D;
 			double attn1 = 2 - dx1 * dx1 - dy1 * dy1 - dz1 * dz1;
 			if (attn1 > 0) {
-				attn1 *= attn1;
-				value += attn1 * attn1 * extrapolate(xsb + 1, ysb + 0, zsb + 0, dx1, dy1, dz1);
+				value += contribute(attn1, xsb + 1, ysb + 0, zsb + 0, dx1, dy1, dz1, derivatives, cache);
 			}
 
 			//Contribution (0,1,0)
@@ -356,8 +534,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz2 = dz1;
 			double attn2 = 2 - dx2 * dx2 - dy2 * dy2 - dz2 * dz2;
 			if (attn2 > 0) {
-				attn2 *= attn2;
-				value += attn2 * attn2 * extrapolate(xsb + 0, ysb + 1, zsb + 0, dx2, dy2, dz2);
+				value += contribute(attn2, xsb + 0, ysb + 1, zsb + 0, dx2, dy2, dz2, derivatives, cache);
 			}
 
 			//Contribution (0,0,1)
@@ -366,8 +543,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz3 = dz0 - 1 - SQUISH_CONSTANT_3D;
 			double attn3 = 2 - dx3 * dx3 - dy3 * dy3 - dz3 * dz3;
 			if (attn3 > 0) {
-				attn3 *= attn3;
-				value += attn3 * attn3 * extrapolate(xsb + 0, ysb + 0, zsb + 1, dx3, dy3, dz3);
+				value += contribute(attn3, xsb + 0, ysb + 0, zsb + 1, dx3, dy3, dz3, derivatives, cache);
 			}
 		} else if (inSum >= 2) { //We're inside the tetrahedron (3-Simplex) at (1,1,1)
 		
@@ -467,8 +643,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz3 = dz0 - 0 - 2 * SQUISH_CONSTANT_3D;
 			double attn3 = 2 - dx3 * dx3 - dy3 * dy3 - dz3 * dz3;
 			if (attn3 > 0) {
-				attn3 *= attn3;
-				value += attn3 * attn3 * extrapolate(xsb + 1, ysb + 1, zsb + 0, dx3, dy3, dz3);
+				value += contribute(attn3, xsb + 1, ysb + 1, zsb + 0, dx3, dy3, dz3, derivatives, cache);
 			}
 
 			//Contribution (1,0,1)
@@ -477,8 +652,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz2 = dz0 - 1 - 2 * SQUISH_CONSTANT_3D;
 			double attn2 = 2 - dx2 * dx2 - dy2 * dy2 - dz2 * dz2;
 			if (attn2 > 0) {
-				attn2 *= attn2;
-				value += attn2 * attn2 * extrapolate(xsb + 1, ysb + 0, zsb + 1, dx2, dy2, dz2);
+				value += contribute(attn2, xsb + 1, ysb + 0, zsb + 1, dx2, dy2, dz2, derivatives, cache);
 			}
 
 			//Contribution (0,1,1)
@@ -487,8 +661,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz1 = dz2;
 			double attn1 = 2 - dx1 * dx1 - dy1 * dy1 - dz1 * dz1;
 			if (attn1 > 0) {
-				attn1 *= attn1;
-				value += attn1 * attn1 * extrapolate(xsb + 0, ysb + 1, zsb + 1, dx1, dy1, dz1);
+				value += contribute(attn1, xsb + 0, ysb + 1, zsb + 1, dx1, dy1, dz1, derivatives, cache);
 			}
 
 			//Contribution (1,1,1)
@@ -497,8 +670,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			dz0 = dz0 - 1 - 3 * SQUISH_CONSTANT_3D;
 			double attn0 = 2 - dx0 * dx0 - dy0 * dy0 - dz0 * dz0;
 			if (attn0 > 0) {
-				attn0 *= attn0;
-				value += attn0 * attn0 * extrapolate(xsb + 1, ysb + 1, zsb + 1, dx0, dy0, dz0);
+				value += contribute(attn0, xsb + 1, ysb + 1, zsb + 1, dx0, dy0, dz0, derivatives, cache);
 			}
 		} else { //We're inside the octahedron (Rectified 3-Simplex) in between.
 			double aScore;
@@ -688,8 +860,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz1 = dz0 - 0 - SQUISH_CONSTANT_3D;
 			double attn1 = 2 - dx1 * dx1 - dy1 * dy1 - dz1 * dz1;
 			if (attn1 > 0) {
-				attn1 *= attn1;
-				value += attn1 * attn1 * extrapolate(xsb + 1, ysb + 0, zsb + 0, dx1, dy1, dz1);
+				value += contribute(attn1, xsb + 1, ysb + 0, zsb + 0, dx1, dy1, dz1, derivatives, cache);
 			}
 
 			//Contribution (0,1,0)
@@ -698,8 +869,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz2 = dz1;
 			double attn2 = 2 - dx2 * dx2 - dy2 * dy2 - dz2 * dz2;
 			if (attn2 > 0) {
-				attn2 *= attn2;
-				value += attn2 * attn2 * extrapolate(xsb + 0, ysb + 1, zsb + 0, dx2, dy2, dz2);
+				value += contribute(attn2, xsb + 0, ysb + 1, zsb + 0, dx2, dy2, dz2, derivatives, cache);
 			}
 
 			//Contribution (0,0,1)
@@ -708,8 +878,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz3 = dz0 - 1 - SQUISH_CONSTANT_3D;
 			double attn3 = 2 - dx3 * dx3 - dy3 * dy3 - dz3 * dz3;
 			if (attn3 > 0) {
-				attn3 *= attn3;
-				value += attn3 * attn3 * extrapolate(xsb + 0, ysb + 0, zsb + 1, dx3, dy3, dz3);
+				value += contribute(attn3, xsb + 0, ysb + 0, zsb + 1, dx3, dy3, dz3, derivatives, cache);
 			}
 
 			//Contribution (1,1,0)
@@ -718,8 +887,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz4 = dz0 - 0 - 2 * SQUISH_CONSTANT_3D;
 			double attn4 = 2 - dx4 * dx4 - dy4 * dy4 - dz4 * dz4;
 			if (attn4 > 0) {
-				attn4 *= attn4;
-				value += attn4 * attn4 * extrapolate(xsb + 1, ysb + 1, zsb + 0, dx4, dy4, dz4);
+				value += contribute(attn4, xsb + 1, ysb + 1, zsb + 0, dx4, dy4, dz4, derivatives, cache);
 			}
 
 			//Contribution (1,0,1)
@@ -728,8 +896,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz5 = dz0 - 1 - 2 * SQUISH_CONSTANT_3D;
 			double attn5 = 2 - dx5 * dx5 - dy5 * dy5 - dz5 * dz5;
 			if (attn5 > 0) {
-				attn5 *= attn5;
-				value += attn5 * attn5 * extrapolate(xsb + 1, ysb + 0, zsb + 1, dx5, dy5, dz5);
+				value += contribute(attn5, xsb + 1, ysb + 0, zsb + 1, dx5, dy5, dz5, derivatives, cache);
 			}
 
 			//Contribution (0,1,1)
@@ -738,8 +905,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dz6 = dz5;
 			double attn6 = 2 - dx6 * dx6 - dy6 * dy6 - dz6 * dz6;
 			if (attn6 > 0) {
-				attn6 *= attn6;
-				value += attn6 * attn6 * extrapolate(xsb + 0, ysb + 1, zsb + 1, dx6, dy6, dz6);
+				value += contribute(attn6, xsb + 0, ysb + 1, zsb + 1, dx6, dy6, dz6, derivatives, cache);
 			}
 		}
  
@@ -747,16 +913,14 @@ public class OpenSimplexNoise implements NoiseGenerator
 		double attn_ext0 = 2 - dx_ext0 * dx_ext0 - dy_ext0 * dy_ext0 - dz_ext0 * dz_ext0;
 		if (attn_ext0 > 0)
 		{
-			attn_ext0 *= attn_ext0;
-			value += attn_ext0 * attn_ext0 * extrapolate(xsv_ext0, ysv_ext0, zsv_ext0, dx_ext0, dy_ext0, dz_ext0);
+			value += contribute(attn_ext0, xsv_ext0, ysv_ext0, zsv_ext0, dx_ext0, dy_ext0, dz_ext0, derivatives, cache);
 		}
 
 		//Second extra vertex
 		double attn_ext1 = 2 - dx_ext1 * dx_ext1 - dy_ext1 * dy_ext1 - dz_ext1 * dz_ext1;
 		if (attn_ext1 > 0)
 		{
-			attn_ext1 *= attn_ext1;
-			value += attn_ext1 * attn_ext1 * extrapolate(xsv_ext1, ysv_ext1, zsv_ext1, dx_ext1, dy_ext1, dz_ext1);
+			value += contribute(attn_ext1, xsv_ext1, ysv_ext1, zsv_ext1, dx_ext1, dy_ext1, dz_ext1, derivatives, cache);
 		}
 		
 		return value / NORM_CONSTANT_3D;
@@ -764,7 +928,30 @@ public class OpenSimplexNoise implements NoiseGenerator
 	
 	//4D OpenSimplex Noise.
 	public double eval(double x, double y, double z, double w) {
+		return eval4D(x, y, z, w, null);
+	}
 	
+	//4D OpenSimplex Noise, also writing the partial derivatives (d/dx, d/dy, d/dz, d/dw) into
+	//the first four entries of the given array.
+	public double evalWithDerivatives(double x, double y, double z, double w, double[] derivatives) {
+		derivatives[0] = derivatives[1] = derivatives[2] = derivatives[3] = 0;
+		double value = eval4D(x, y, z, w, derivatives);
+		derivatives[0] /= NORM_CONSTANT_4D;
+		derivatives[1] /= NORM_CONSTANT_4D;
+		derivatives[2] /= NORM_CONSTANT_4D;
+		derivatives[3] /= NORM_CONSTANT_4D;
+		return value;
+	}
+	
+	//Derivatives of the lattice contributions are accumulated into the array if it isn't null.
+	double eval4D(double x, double y, double z, double w, double[] derivatives) {
+	
+		//Translate variants.
+		x += offsetX;
+		y += offsetY;
+		z += offsetZ;
+		w += offsetW;
+		
 		//Place input coordinates on simplectic honeycomb.
 		double stretchOffset = (x + y + z + w) * STRETCH_CONSTANT_4D;
 		double xs = x + stretchOffset;
@@ -955,8 +1142,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			//Contribution (0,0,0,0)
 			double attn0 = 2 - dx0 * dx0 - dy0 * dy0 - dz0 * dz0 - dw0 * dw0;
 			if (attn0 > 0) {
-				attn0 *= attn0;
-				value += attn0 * attn0 * extrapolate(xsb + 0, ysb + 0, zsb + 0, wsb + 0, dx0, dy0, dz0, dw0);
+				value += contribute(attn0, xsb + 0, ysb + 0, zsb + 0, wsb + 0, dx0, dy0, dz0, dw0, derivatives);
 			}
 
 			//Contribution (1,0,0,0)
@@ -966,8 +1152,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw1 = dw0 - 0 - SQUISH_CONSTANT_4D;
 			double attn1 = 2 - dx1 * dx1 - dy1 * dy1 - dz1 * dz1 - dw1 * dw1;
 			if (attn1 > 0) {
-				attn1 *= attn1;
-				value += attn1 * attn1 * extrapolate(xsb + 1, ysb + 0, zsb + 0, wsb + 0, dx1, dy1, dz1, dw1);
+				value += contribute(attn1, xsb + 1, ysb + 0, zsb + 0, wsb + 0, dx1, dy1, dz1, dw1, derivatives);
 			}
 
 			//Contribution (0,1,0,0)
@@ -977,8 +1162,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw2 = dw1;
 			double attn2 = 2 - dx2 * dx2 - dy2 * dy2 - dz2 * dz2 - dw2 * dw2;
 			if (attn2 > 0) {
-				attn2 *= attn2;
-				value += attn2 * attn2 * extrapolate(xsb + 0, ysb + 1, zsb + 0, wsb + 0, dx2, dy2, dz2, dw2);
+				value += contribute(attn2, xsb + 0, ysb + 1, zsb + 0, wsb + 0, dx2, dy2, dz2, dw2, derivatives);
 			}
 
 			//Contribution (0,0,1,0)
@@ -988,8 +1172,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw3 = dw1;
 			double attn3 = 2 - dx3 * dx3 - dy3 * dy3 - dz3 * dz3 - dw3 * dw3;
 			if (attn3 > 0) {
-				attn3 *= attn3;
-				value += attn3 * attn3 * extrapolate(xsb + 0, ysb + 0, zsb + 1, wsb + 0, dx3, dy3, dz3, dw3);
+				value += contribute(attn3, xsb + 0, ysb + 0, zsb + 1, wsb + 0, dx3, dy3, dz3, dw3, derivatives);
 			}
 
 			//Contribution (0,0,0,1)
@@ -999,8 +1182,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw4 = dw0 - 1 - SQUISH_CONSTANT_4D;
 			double attn4 = 2 - dx4 * dx4 - dy4 * dy4 - dz4 * dz4 - dw4 * dw4;
 			if (attn4 > 0) {
-				attn4 *= attn4;
-				value += attn4 * attn4 * extrapolate(xsb + 0, ysb + 0, zsb + 0, wsb + 1, dx4, dy4, dz4, dw4);
+				value += contribute(attn4, xsb + 0, ysb + 0, zsb + 0, wsb + 1, dx4, dy4, dz4, dw4, derivatives);
 			}
 		} else if (inSum >= 3) { //We're inside the pentachoron (4-Simplex) at (1,1,1,1)
 			//Determine which two of (1,1,1,0), (1,1,0,1), (1,0,1,1), (0,1,1,1) are closest.
@@ -1152,8 +1334,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw4 = dw0 - 3 * SQUISH_CONSTANT_4D;
 			double attn4 = 2 - dx4 * dx4 - dy4 * dy4 - dz4 * dz4 - dw4 * dw4;
 			if (attn4 > 0) {
-				attn4 *= attn4;
-				value += attn4 * attn4 * extrapolate(xsb + 1, ysb + 1, zsb + 1, wsb + 0, dx4, dy4, dz4, dw4);
+				value += contribute(attn4, xsb + 1, ysb + 1, zsb + 1, wsb + 0, dx4, dy4, dz4, dw4, derivatives);
 			}
 
 			//Contribution (1,1,0,1)
@@ -1163,8 +1344,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw3 = dw0 - 1 - 3 * SQUISH_CONSTANT_4D;
 			double attn3 = 2 - dx3 * dx3 - dy3 * dy3 - dz3 * dz3 - dw3 * dw3;
 			if (attn3 > 0) {
-				attn3 *= attn3;
-				value += attn3 * attn3 * extrapolate(xsb + 1, ysb + 1, zsb + 0, wsb + 1, dx3, dy3, dz3, dw3);
+				value += contribute(attn3, xsb + 1, ysb + 1, zsb + 0, wsb + 1, dx3, dy3, dz3, dw3, derivatives);
 			}
 
 			//Contribution (1,0,1,1)
@@ -1174,8 +1354,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw2 = dw3;
 			double attn2 = 2 - dx2 * dx2 - dy2 * dy2 - dz2 * dz2 - dw2 * dw2;
 			if (attn2 > 0) {
-				attn2 *= attn2;
-				value += attn2 * attn2 * extrapolate(xsb + 1, ysb + 0, zsb + 1, wsb + 1, dx2, dy2, dz2, dw2);
+				value += contribute(attn2, xsb + 1, ysb + 0, zsb + 1, wsb + 1, dx2, dy2, dz2, dw2, derivatives);
 			}
 
 			//Contribution (0,1,1,1)
@@ -1185,8 +1364,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw1 = dw3;
 			double attn1 = 2 - dx1 * dx1 - dy1 * dy1 - dz1 * dz1 - dw1 * dw1;
 			if (attn1 > 0) {
-				attn1 *= attn1;
-				value += attn1 * attn1 * extrapolate(xsb + 0, ysb + 1, zsb + 1, wsb + 1, dx1, dy1, dz1, dw1);
+				value += contribute(attn1, xsb + 0, ysb + 1, zsb + 1, wsb + 1, dx1, dy1, dz1, dw1, derivatives);
 			}
 
 			//Contribution (1,1,1,1)
@@ -1196,8 +1374,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			dw0 = dw0 - 1 - 4 * SQUISH_CONSTANT_4D;
 			double attn0 = 2 - dx0 * dx0 - dy0 * dy0 - dz0 * dz0 - dw0 * dw0;
 			if (attn0 > 0) {
-				attn0 *= attn0;
-				value += attn0 * attn0 * extrapolate(xsb + 1, ysb + 1, zsb + 1, wsb + 1, dx0, dy0, dz0, dw0);
+				value += contribute(attn0, xsb + 1, ysb + 1, zsb + 1, wsb + 1, dx0, dy0, dz0, dw0, derivatives);
 			}
 		} else if (inSum <= 2) { //We're inside the first dispentachoron (Rectified 4-Simplex)
 			double aScore;
@@ -1526,8 +1703,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw1 = dw0 - 0 - SQUISH_CONSTANT_4D;
 			double attn1 = 2 - dx1 * dx1 - dy1 * dy1 - dz1 * dz1 - dw1 * dw1;
 			if (attn1 > 0) {
-				attn1 *= attn1;
-				value += attn1 * attn1 * extrapolate(xsb + 1, ysb + 0, zsb + 0, wsb + 0, dx1, dy1, dz1, dw1);
+				value += contribute(attn1, xsb + 1, ysb + 0, zsb + 0, wsb + 0, dx1, dy1, dz1, dw1, derivatives);
 			}
 
 			//Contribution (0,1,0,0)
@@ -1537,8 +1713,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw2 = dw1;
 			double attn2 = 2 - dx2 * dx2 - dy2 * dy2 - dz2 * dz2 - dw2 * dw2;
 			if (attn2 > 0) {
-				attn2 *= attn2;
-				value += attn2 * attn2 * extrapolate(xsb + 0, ysb + 1, zsb + 0, wsb + 0, dx2, dy2, dz2, dw2);
+				value += contribute(attn2, xsb + 0, ysb + 1, zsb + 0, wsb + 0, dx2, dy2, dz2, dw2, derivatives);
 			}
 
 			//Contribution (0,0,1,0)
@@ -1548,8 +1723,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw3 = dw1;
 			double attn3 = 2 - dx3 * dx3 - dy3 * dy3 - dz3 * dz3 - dw3 * dw3;
 			if (attn3 > 0) {
-				attn3 *= attn3;
-				value += attn3 * attn3 * extrapolate(xsb + 0, ysb + 0, zsb + 1, wsb + 0, dx3, dy3, dz3, dw3);
+				value += contribute(attn3, xsb + 0, ysb + 0, zsb + 1, wsb + 0, dx3, dy3, dz3, dw3, derivatives);
 			}
 
 			//Contribution (0,0,0,1)
@@ -1559,8 +1733,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw4 = dw0 - 1 - SQUISH_CONSTANT_4D;
 			double attn4 = 2 - dx4 * dx4 - dy4 * dy4 - dz4 * dz4 - dw4 * dw4;
 			if (attn4 > 0) {
-				attn4 *= attn4;
-				value += attn4 * attn4 * extrapolate(xsb + 0, ysb + 0, zsb + 0, wsb + 1, dx4, dy4, dz4, dw4);
+				value += contribute(attn4, xsb + 0, ysb + 0, zsb + 0, wsb + 1, dx4, dy4, dz4, dw4, derivatives);
 			}
 			
 			//Contribution (1,1,0,0)
@@ -1570,8 +1743,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw5 = dw0 - 0 - 2 * SQUISH_CONSTANT_4D;
 			double attn5 = 2 - dx5 * dx5 - dy5 * dy5 - dz5 * dz5 - dw5 * dw5;
 			if (attn5 > 0) {
-				attn5 *= attn5;
-				value += attn5 * attn5 * extrapolate(xsb + 1, ysb + 1, zsb + 0, wsb + 0, dx5, dy5, dz5, dw5);
+				value += contribute(attn5, xsb + 1, ysb + 1, zsb + 0, wsb + 0, dx5, dy5, dz5, dw5, derivatives);
 			}
 			
 			//Contribution (1,0,1,0)
@@ -1581,8 +1753,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw6 = dw0 - 0 - 2 * SQUISH_CONSTANT_4D;
 			double attn6 = 2 - dx6 * dx6 - dy6 * dy6 - dz6 * dz6 - dw6 * dw6;
 			if (attn6 > 0) {
-				attn6 *= attn6;
-				value += attn6 * attn6 * extrapolate(xsb + 1, ysb + 0, zsb + 1, wsb + 0, dx6, dy6, dz6, dw6);
+				value += contribute(attn6, xsb + 1, ysb + 0, zsb + 1, wsb + 0, dx6, dy6, dz6, dw6, derivatives);
 			}
 
 			//Contribution (1,0,0,1)
@@ -1592,8 +1763,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw7 = dw0 - 1 - 2 * SQUISH_CONSTANT_4D;
 			double attn7 = 2 - dx7 * dx7 - dy7 * dy7 - dz7 * dz7 - dw7 * dw7;
 			if (attn7 > 0) {
-				attn7 *= attn7;
-				value += attn7 * attn7 * extrapolate(xsb + 1, ysb + 0, zsb + 0, wsb + 1, dx7, dy7, dz7, dw7);
+				value += contribute(attn7, xsb + 1, ysb + 0, zsb + 0, wsb + 1, dx7, dy7, dz7, dw7, derivatives);
 			}
 			
 			//Contribution (0,1,1,0)
@@ -1603,8 +1773,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw8 = dw0 - 0 - 2 * SQUISH_CONSTANT_4D;
 			double attn8 = 2 - dx8 * dx8 - dy8 * dy8 - dz8 * dz8 - dw8 * dw8;
 			if (attn8 > 0) {
-				attn8 *= attn8;
-				value += attn8 * attn8 * extrapolate(xsb + 0, ysb + 1, zsb + 1, wsb + 0, dx8, dy8, dz8, dw8);
+				value += contribute(attn8, xsb + 0, ysb + 1, zsb + 1, wsb + 0, dx8, dy8, dz8, dw8, derivatives);
 			}
 			
 			//Contribution (0,1,0,1)
@@ -1614,8 +1783,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw9 = dw0 - 1 - 2 * SQUISH_CONSTANT_4D;
 			double attn9 = 2 - dx9 * dx9 - dy9 * dy9 - dz9 * dz9 - dw9 * dw9;
 			if (attn9 > 0) {
-				attn9 *= attn9;
-				value += attn9 * attn9 * extrapolate(xsb + 0, ysb + 1, zsb + 0, wsb + 1, dx9, dy9, dz9, dw9);
+				value += contribute(attn9, xsb + 0, ysb + 1, zsb + 0, wsb + 1, dx9, dy9, dz9, dw9, derivatives);
 			}
 			
 			//Contribution (0,0,1,1)
@@ -1625,8 +1793,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw10 = dw0 - 1 - 2 * SQUISH_CONSTANT_4D;
 			double attn10 = 2 - dx10 * dx10 - dy10 * dy10 - dz10 * dz10 - dw10 * dw10;
 			if (attn10 > 0) {
-				attn10 *= attn10;
-				value += attn10 * attn10 * extrapolate(xsb + 0, ysb + 0, zsb + 1, wsb + 1, dx10, dy10, dz10, dw10);
+				value += contribute(attn10, xsb + 0, ysb + 0, zsb + 1, wsb + 1, dx10, dy10, dz10, dw10, derivatives);
 			}
 		} else { //We're inside the second dispentachoron (Rectified 4-Simplex)
 			double aScore;
@@ -1945,8 +2112,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw4 = dw0 - 3 * SQUISH_CONSTANT_4D;
 			double attn4 = 2 - dx4 * dx4 - dy4 * dy4 - dz4 * dz4 - dw4 * dw4;
 			if (attn4 > 0) {
-				attn4 *= attn4;
-				value += attn4 * attn4 * extrapolate(xsb + 1, ysb + 1, zsb + 1, wsb + 0, dx4, dy4, dz4, dw4);
+				value += contribute(attn4, xsb + 1, ysb + 1, zsb + 1, wsb + 0, dx4, dy4, dz4, dw4, derivatives);
 			}
 
 			//Contribution (1,1,0,1)
@@ -1956,8 +2122,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw3 = dw0 - 1 - 3 * SQUISH_CONSTANT_4D;
 			double attn3 = 2 - dx3 * dx3 - dy3 * dy3 - dz3 * dz3 - dw3 * dw3;
 			if (attn3 > 0) {
-				attn3 *= attn3;
-				value += attn3 * attn3 * extrapolate(xsb + 1, ysb + 1, zsb + 0, wsb + 1, dx3, dy3, dz3, dw3);
+				value += contribute(attn3, xsb + 1, ysb + 1, zsb + 0, wsb + 1, dx3, dy3, dz3, dw3, derivatives);
 			}
 
 			//Contribution (1,0,1,1)
@@ -1967,8 +2132,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw2 = dw3;
 			double attn2 = 2 - dx2 * dx2 - dy2 * dy2 - dz2 * dz2 - dw2 * dw2;
 			if (attn2 > 0) {
-				attn2 *= attn2;
-				value += attn2 * attn2 * extrapolate(xsb + 1, ysb + 0, zsb + 1, wsb + 1, dx2, dy2, dz2, dw2);
+				value += contribute(attn2, xsb + 1, ysb + 0, zsb + 1, wsb + 1, dx2, dy2, dz2, dw2, derivatives);
 			}
 
 			//Contribution (0,1,1,1)
@@ -1978,8 +2142,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw1 = dw3;
 			double attn1 = 2 - dx1 * dx1 - dy1 * dy1 - dz1 * dz1 - dw1 * dw1;
 			if (attn1 > 0) {
-				attn1 *= attn1;
-				value += attn1 * attn1 * extrapolate(xsb + 0, ysb + 1, zsb + 1, wsb + 1, dx1, dy1, dz1, dw1);
+				value += contribute(attn1, xsb + 0, ysb + 1, zsb + 1, wsb + 1, dx1, dy1, dz1, dw1, derivatives);
 			}
 			
 			//Contribution (1,1,0,0)
@@ -1989,8 +2152,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw5 = dw0 - 0 - 2 * SQUISH_CONSTANT_4D;
 			double attn5 = 2 - dx5 * dx5 - dy5 * dy5 - dz5 * dz5 - dw5 * dw5;
 			if (attn5 > 0) {
-				attn5 *= attn5;
-				value += attn5 * attn5 * extrapolate(xsb + 1, ysb + 1, zsb + 0, wsb + 0, dx5, dy5, dz5, dw5);
+				value += contribute(attn5, xsb + 1, ysb + 1, zsb + 0, wsb + 0, dx5, dy5, dz5, dw5, derivatives);
 			}
 			
 			//Contribution (1,0,1,0)
@@ -2000,8 +2162,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw6 = dw0 - 0 - 2 * SQUISH_CONSTANT_4D;
 			double attn6 = 2 - dx6 * dx6 - dy6 * dy6 - dz6 * dz6 - dw6 * dw6;
 			if (attn6 > 0) {
-				attn6 *= attn6;
-				value += attn6 * attn6 * extrapolate(xsb + 1, ysb + 0, zsb + 1, wsb + 0, dx6, dy6, dz6, dw6);
+				value += contribute(attn6, xsb + 1, ysb + 0, zsb + 1, wsb + 0, dx6, dy6, dz6, dw6, derivatives);
 			}
 
 			//Contribution (1,0,0,1)
@@ -2011,8 +2172,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw7 = dw0 - 1 - 2 * SQUISH_CONSTANT_4D;
 			double attn7 = 2 - dx7 * dx7 - dy7 * dy7 - dz7 * dz7 - dw7 * dw7;
 			if (attn7 > 0) {
-				attn7 *= attn7;
-				value += attn7 * attn7 * extrapolate(xsb + 1, ysb + 0, zsb + 0, wsb + 1, dx7, dy7, dz7, dw7);
+				value += contribute(attn7, xsb + 1, ysb + 0, zsb + 0, wsb + 1, dx7, dy7, dz7, dw7, derivatives);
 			}
 			
 			//Contribution (0,1,1,0)
@@ -2022,8 +2182,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw8 = dw0 - 0 - 2 * SQUISH_CONSTANT_4D;
 			double attn8 = 2 - dx8 * dx8 - dy8 * dy8 - dz8 * dz8 - dw8 * dw8;
 			if (attn8 > 0) {
-				attn8 *= attn8;
-				value += attn8 * attn8 * extrapolate(xsb + 0, ysb + 1, zsb + 1, wsb + 0, dx8, dy8, dz8, dw8);
+				value += contribute(attn8, xsb + 0, ysb + 1, zsb + 1, wsb + 0, dx8, dy8, dz8, dw8, derivatives);
 			}
 			
 			//Contribution (0,1,0,1)
@@ -2033,8 +2192,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw9 = dw0 - 1 - 2 * SQUISH_CONSTANT_4D;
 			double attn9 = 2 - dx9 * dx9 - dy9 * dy9 - dz9 * dz9 - dw9 * dw9;
 			if (attn9 > 0) {
-				attn9 *= attn9;
-				value += attn9 * attn9 * extrapolate(xsb + 0, ysb + 1, zsb + 0, wsb + 1, dx9, dy9, dz9, dw9);
+				value += contribute(attn9, xsb + 0, ysb + 1, zsb + 0, wsb + 1, dx9, dy9, dz9, dw9, derivatives);
 			}
 			
 			//Contribution (0,0,1,1)
@@ -2044,8 +2202,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 			double dw10 = dw0 - 1 - 2 * SQUISH_CONSTANT_4D;
 			double attn10 = 2 - dx10 * dx10 - dy10 * dy10 - dz10 * dz10 - dw10 * dw10;
 			if (attn10 > 0) {
-				attn10 *= attn10;
-				value += attn10 * attn10 * extrapolate(xsb + 0, ysb + 0, zsb + 1, wsb + 1, dx10, dy10, dz10, dw10);
+				value += contribute(attn10, xsb + 0, ysb + 0, zsb + 1, wsb + 1, dx10, dy10, dz10, dw10, derivatives);
 			}
 		}
  
@@ -2053,61 +2210,309 @@ public class OpenSimplexNoise implements NoiseGenerator
 		double attn_ext0 = 2 - dx_ext0 * dx_ext0 - dy_ext0 * dy_ext0 - dz_ext0 * dz_ext0 - dw_ext0 * dw_ext0;
 		if (attn_ext0 > 0)
 		{
-			attn_ext0 *= attn_ext0;
-			value += attn_ext0 * attn_ext0 * extrapolate(xsv_ext0, ysv_ext0, zsv_ext0, wsv_ext0, dx_ext0, dy_ext0, dz_ext0, dw_ext0);
+			value += contribute(attn_ext0, xsv_ext0, ysv_ext0, zsv_ext0, wsv_ext0, dx_ext0, dy_ext0, dz_ext0, dw_ext0, derivatives);
 		}
 
 		//Second extra vertex
 		double attn_ext1 = 2 - dx_ext1 * dx_ext1 - dy_ext1 * dy_ext1 - dz_ext1 * dz_ext1 - dw_ext1 * dw_ext1;
 		if (attn_ext1 > 0)
 		{
-			attn_ext1 *= attn_ext1;
-			value += attn_ext1 * attn_ext1 * extrapolate(xsv_ext1, ysv_ext1, zsv_ext1, wsv_ext1, dx_ext1, dy_ext1, dz_ext1, dw_ext1);
+			value += contribute(attn_ext1, xsv_ext1, ysv_ext1, zsv_ext1, wsv_ext1, dx_ext1, dy_ext1, dz_ext1, dw_ext1, derivatives);
 		}
 
 		//Third extra vertex
 		double attn_ext2 = 2 - dx_ext2 * dx_ext2 - dy_ext2 * dy_ext2 - dz_ext2 * dz_ext2 - dw_ext2 * dw_ext2;
 		if (attn_ext2 > 0)
 		{
-			attn_ext2 *= attn_ext2;
-			value += attn_ext2 * attn_ext2 * extrapolate(xsv_ext2, ysv_ext2, zsv_ext2, wsv_ext2, dx_ext2, dy_ext2, dz_ext2, dw_ext2);
+			value += contribute(attn_ext2, xsv_ext2, ysv_ext2, zsv_ext2, wsv_ext2, dx_ext2, dy_ext2, dz_ext2, dw_ext2, derivatives);
 		}
 
 		return value / NORM_CONSTANT_4D;
 	}
 	
-	private double extrapolate(int xsb, int ysb, double dx, double dy)
+	//Range over a box: the value at the center, plus or minus the Lipschitz bound times the
+	//distance to the corners, clamped to the overall range. Both bounds are empirical, see
+	//BOUND_MARGIN.
+	@Override
+	public void bounds(double minX, double minY, double maxX, double maxY, double[] out) {
+		double dx = (maxX - minX) * 0.5, dy = (maxY - minY) * 0.5;
+		double radius = Math.sqrt(dx * dx + dy * dy) * MAX_GRADIENT_2D;
+		double center = radius >= 2 * MAX_VALUE_2D ? 0 : eval(minX + dx, minY + dy);
+		out[0] = Math.max(-MAX_VALUE_2D, center - radius);
+		out[1] = Math.min(MAX_VALUE_2D, center + radius);
+	}
+	
+	@Override
+	public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out) {
+		double dx = (maxX - minX) * 0.5, dy = (maxY - minY) * 0.5, dz = (maxZ - minZ) * 0.5;
+		double radius = Math.sqrt(dx * dx + dy * dy + dz * dz) * MAX_GRADIENT_3D;
+		double center = radius >= 2 * MAX_VALUE_3D ? 0 : eval(minX + dx, minY + dy, minZ + dz);
+		out[0] = Math.max(-MAX_VALUE_3D, center - radius);
+		out[1] = Math.min(MAX_VALUE_3D, center + radius);
+	}
+	
+	//2D grid fill. See NoiseGenerator for the buffer layout.
+	//At fine steps samples in the same super-cell share its gradients through a LatticeCache.
+	//As in 3D the stretch offset is summed per sample, so samples match eval bit for bit.
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY) {
+		LatticeCache cache = LatticeCache.forStep(stepY);
+		int index = 0;
+		for (int i = 0; i < sizeX; i++) {
+			double xi = x + i * stepX;
+			for (int j = 0; j < sizeY; j++)
+				buffer[index++] = eval2D(xi, y + j * stepY, null, cache);
+		}
+	}
+	
+	//3D grid fill. See NoiseGenerator for the buffer layout.
+	//Samples in the same super-cell share its gradients through a LatticeCache, so each vertex
+	//is hashed once per visit to a super-cell. The translated coordinates are worked out once
+	//per row and column, which makes fills about 1.2 to 1.4 times as fast as per-sample eval;
+	//the cache itself saves little over hashing, which is three table reads. The stretch
+	//offset is still summed from the coordinates of each sample: OpenSimplex noise jumps by up
+	//to about 4e-5 where the decisions between regions flip, and grid-aligned samples land
+	//exactly on those ties, so rounding the sum differently would shift samples by that much.
+	//Samples match eval bit for bit.
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ) {
+		double offsetXY = offsetX + offsetY;
+		double[] axisZ = new double[sizeZ];
+		for (int k = 0; k < sizeZ; k++)
+			axisZ[k] = (z + k * stepZ) + offsetZ;
+		
+		LatticeCache cache = LatticeCache.forStep(stepZ);
+		int index = 0;
+		for (int i = 0; i < sizeX; i++) {
+			double xi = x + i * stepX;
+			double tx = xi + offsetX;
+			for (int j = 0; j < sizeY; j++) {
+				double yj = y + j * stepY;
+				double ty = yj + offsetY;
+				double txy = (xi + yj) + offsetXY;
+				for (int k = 0; k < sizeZ; k++) {
+					double tz = axisZ[k];
+					double stretchOffset = (txy + tz) * STRETCH_CONSTANT_3D;
+					buffer[index++] = evalStretched3D(tx, ty, tz, tx + stretchOffset, ty + stretchOffset, tz + stretchOffset, null, cache);
+				}
+			}
+		}
+	}
+	
+	//Column fill at fixed x and z. See NoiseGenerator for the buffer layout.
+	//The translated x and z are worked out once for the column, and each sample picks its
+	//region the way eval does, so samples match eval bit for bit. That leaves little to save:
+	//fills run about as fast as per-sample eval. A LatticeCache made them about 1.3 times as
+	//slow, as the column visits too few vertices per super-cell to pay for it.
+	@Override
+	public void fillColumn(double[] buffer, double x, double y, double z, double stepY, int sizeY) {
+		double offsetXY = offsetX + offsetY;
+		double tx = x + offsetX;
+		double tz = z + offsetZ;
+		
+		for (int j = 0; j < sizeY; j++) {
+			double yj = y + j * stepY;
+			double ty = yj + offsetY;
+			double stretchOffset = (((x + yj) + offsetXY) + tz) * STRETCH_CONSTANT_3D;
+			buffer[j] = evalStretched3D(tx, ty, tz, tx + stretchOffset, ty + stretchOffset, tz + stretchOffset, null, null);
+		}
+	}
+	
+	//Offset of the gradient of a lattice vertex in gradients2D.
+	int gradientIndex2D(int xsv, int ysv)
+	{
+		return perm[(perm[xsv & 0xFF] + ysv) & 0xFF] & 0x0E;
+	}
+	
+	//Offset of the gradient of a lattice vertex in gradients3D.
+	int gradientIndex3D(int xsv, int ysv, int zsv)
+	{
+		return permGradIndex3D[(perm[(perm[xsv & 0xFF] + ysv) & 0xFF] + zsv) & 0xFF];
+	}
+	
+	//Offset of the gradient of a lattice vertex in gradients4D.
+	int gradientIndex4D(int xsv, int ysv, int zsv, int wsv)
 	{
-		int index = perm[(perm[xsb & 0xFF] + ysb) & 0xFF] & 0x0E;
-		return gradients2D[index] * dx
-			+ gradients2D[index + 1] * dy;
+		return perm[(perm[(perm[(perm[xsv & 0xFF] + ysv) & 0xFF] + zsv) & 0xFF] + wsv) & 0xFF] & 0xFC;
 	}
 	
-	private double extrapolate(int xsb, int ysb, int zsb, double dx, double dy, double dz)
+	//Contribution of a single lattice vertex: attn^4 times the gradient extrapolation, where
+	//attn = 2 - |d|^2. The derivative of that with respect to each input coordinate is
+	//attn^4 * g - 8 * attn^3 * (g . d) * d, since d moves one for one with the input.
+	double contribute(double attn, int xsv, int ysv, double dx, double dy, double[] derivatives, LatticeCache cache)
 	{
-		int index = permGradIndex3D[(perm[(perm[xsb & 0xFF] + ysb) & 0xFF] + zsb) & 0xFF];
-		return gradients3D[index] * dx
-			+ gradients3D[index + 1] * dy
-			+ gradients3D[index + 2] * dz;
+		int index = cache == null ? gradientIndex2D(xsv, ysv) : cache.gradientIndex2D(this, xsv, ysv);
+		double gx = gradients2D[index];
+		double gy = gradients2D[index + 1];
+		double extrapolation = gx * dx + gy * dy;
+		double attn2 = attn * attn;
+		double attn4 = attn2 * attn2;
+		
+		if (derivatives != null)
+		{
+			double falloff = -8 * attn2 * attn * extrapolation;
+			derivatives[0] += attn4 * gx + falloff * dx;
+			derivatives[1] += attn4 * gy + falloff * dy;
+		}
+		
+		return attn4 * extrapolation;
 	}
 	
-	private double extrapolate(int xsb, int ysb, int zsb, int wsb, double dx, double dy, double dz, double dw)
+	double contribute(double attn, int xsv, int ysv, int zsv, double dx, double dy, double dz, double[] derivatives, LatticeCache cache)
 	{
-		int index = perm[(perm[(perm[(perm[xsb & 0xFF] + ysb) & 0xFF] + zsb) & 0xFF] + wsb) & 0xFF] & 0xFC;
-		return gradients4D[index] * dx
-			+ gradients4D[index + 1] * dy
-			+ gradients4D[index + 2] * dz
-			+ gradients4D[index + 3] * dw;
+		int index = cache == null ? gradientIndex3D(xsv, ysv, zsv) : cache.gradientIndex3D(this, xsv, ysv, zsv);
+		double gx = gradients3D[index];
+		double gy = gradients3D[index + 1];
+		double gz = gradients3D[index + 2];
+		double extrapolation = gx * dx + gy * dy + gz * dz;
+		double attn2 = attn * attn;
+		double attn4 = attn2 * attn2;
+		
+		if (derivatives != null)
+		{
+			double falloff = -8 * attn2 * attn * extrapolation;
+			derivatives[0] += attn4 * gx + falloff * dx;
+			derivatives[1] += attn4 * gy + falloff * dy;
+			derivatives[2] += attn4 * gz + falloff * dz;
+		}
+		
+		return attn4 * extrapolation;
+	}
+	
+	double contribute(double attn, int xsv, int ysv, int zsv, int wsv, double dx, double dy, double dz, double dw, double[] derivatives)
+	{
+		int index = gradientIndex4D(xsv, ysv, zsv, wsv);
+		double gx = gradients4D[index];
+		double gy = gradients4D[index + 1];
+		double gz = gradients4D[index + 2];
+		double gw = gradients4D[index + 3];
+		double extrapolation = gx * dx + gy * dy + gz * dz + gw * dw;
+		double attn2 = attn * attn;
+		double attn4 = attn2 * attn2;
+		
+		if (derivatives != null)
+		{
+			double falloff = -8 * attn2 * attn * extrapolation;
+			derivatives[0] += attn4 * gx + falloff * dx;
+			derivatives[1] += attn4 * gy + falloff * dy;
+			derivatives[2] += attn4 * gz + falloff * dz;
+			derivatives[3] += attn4 * gw + falloff * dw;
+		}
+		
+		return attn4 * extrapolation;
+	}
+	
+	public enum Implementation
+	{
+		/**
+		 * Walks the decision tree of the reference implementation.
+		 */
+		BRANCHING,
+		/**
+		 * Looks up the lattice points for each region of the honeycomb in
+		 * precomputed tables. Evaluation with derivatives still walks the
+		 * decision tree. Much faster in 4D, whose reference implementation is
+		 * too large for the JIT to compile.
+		 */
+		LOOKUP;
+	}
+	
+	//Permutation tables interned by shared(long), weakly so that unused seeds are collected.
+	private static final Map<Long, TableReference> TABLES = new HashMap<>();
+	private static final ReferenceQueue<PermutationTable> QUEUE = new ReferenceQueue<>();
+	
+	//The gradient offsets of the lattice vertices around the last 2D or 3D super-cell visited,
+	//so that samples of a grid fill falling in the same super-cell hash each vertex once. The
+	//vertices of a super-cell lie between one below and two above its origin on each axis, 64
+	//in all in 3D. A cache serves fills of one dimension only.
+	//Entries are valid while their stamp matches the current one, so moving to another
+	//super-cell only bumps the stamp.
+	static final class LatticeCache
+	{
+		private final int[] indices = new int[64];
+		private final int[] stamps = new int[64];
+		private int stamp = 1;
+		private int cellX, cellY, cellZ;
+		
+		//A cache for a fill stepping by the given amount along its innermost axis, or null if
+		//that is too coarse for consecutive samples to share super-cells, which are about a
+		//unit across.
+		static LatticeCache forStep(double step)
+		{
+			return Math.abs(step) < 0.5 ? new LatticeCache() : null;
+		}
+		
+		void moveTo(int xsb, int ysb, int zsb)
+		{
+			if (xsb != cellX || ysb != cellY || zsb != cellZ) {
+				cellX = xsb;
+				cellY = ysb;
+				cellZ = zsb;
+				
+				if (++stamp == 0) {
+					Arrays.fill(stamps, 0);
+					stamp = 1;
+				}
+			}
+		}
+		
+		//The vertices of a 2D super-cell, moved to with a z of 0, take the first 16 slots.
+		int gradientIndex2D(OpenSimplexNoise noise, int xsv, int ysv)
+		{
+			int slot = ((xsv - cellX + 1) << 2) | (ysv - cellY + 1);
+			
+			if (stamps[slot] != stamp) {
+				stamps[slot] = stamp;
+				indices[slot] = noise.gradientIndex2D(xsv, ysv);
+			}
+			
+			return indices[slot];
+		}
+		
+		int gradientIndex3D(OpenSimplexNoise noise, int xsv, int ysv, int zsv)
+		{
+			int slot = ((xsv - cellX + 1) << 4) | ((ysv - cellY + 1) << 2) | (zsv - cellZ + 1);
+			
+			if (stamps[slot] != stamp) {
+				stamps[slot] = stamp;
+				indices[slot] = noise.gradientIndex3D(xsv, ysv, zsv);
+			}
+			
+			return indices[slot];
+		}
+	}
+	
+	static final class PermutationTable
+	{
+		private final short[] perm;
+		private final short[] permGradIndex3D;
+		
+		private PermutationTable(short[] perm, short[] permGradIndex3D)
+		{
+			this.perm = perm;
+			this.permGradIndex3D = permGradIndex3D;
+		}
+	}
+	
+	private static final class TableReference extends WeakReference<PermutationTable>
+	{
+		private final long seed;
+		
+		private TableReference(long seed, PermutationTable table)
+		{
+			super(table, QUEUE);
+			this.seed = seed;
+		}
 	}
 	
-	private static int fastFloor(double x) {
+	static int fastFloor(double x) {
 		int xi = (int)x;
 		return x < xi ? xi - 1 : xi;
 	}
 	
 	//Gradients for 2D. They approximate the directions to the
 	//vertices of an octagon from the center.
-	private static byte[] gradients2D = new byte[] {
+	static byte[] gradients2D = new byte[] {
 		 5,  2,    2,  5,
 		-5,  2,   -2,  5,
 		 5, -2,    2, -5,
@@ -2118,7 +2523,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 	//vertices of a rhombicuboctahedron from the center, skewed so
 	//that the triangular and square facets can be inscribed inside
 	//circles of the same radius.
-	private static byte[] gradients3D = new byte[] {
+	static byte[] gradients3D = new byte[] {
 		-11,  4,  4,     -4,  11,  4,    -4,  4,  11,
 		 11,  4,  4,      4,  11,  4,     4,  4,  11,
 		-11, -4,  4,     -4, -11,  4,    -4, -4,  11,
@@ -2133,7 +2538,7 @@ public class OpenSimplexNoise implements NoiseGenerator
 	//vertices of a disprismatotesseractihexadecachoron from the center,
 	//skewed so that the tetrahedral and cubic facets can be inscribed inside
 	//spheres of the same radius.
-	private static byte[] gradients4D = new byte[] {
+	static byte[] gradients4D = new byte[] {
 	     3,  1,  1,  1,      1,  3,  1,  1,      1,  1,  3,  1,      1,  1,  1,  3,
 	    -3,  1,  1,  1,     -1,  3,  1,  1,     -1,  1,  3,  1,     -1,  1,  1,  3,
 	     3, -1,  1,  1,      1, -3,  1,  1,      1, -1,  3,  1,      1, -1,  1,  3,
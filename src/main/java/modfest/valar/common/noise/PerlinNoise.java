@@ -0,0 +1,299 @@
+package modfest.valar.common.noise;
+
+import java.util.Random;
+
+/**
+ * Ken Perlin's improved noise, from <i>Improving Noise</i> (SIGGRAPH 2002):
+ * gradient noise on the cubic lattice with the quintic fade curve and the 12
+ * cube edge gradients, selected through a permutation of 0 to 255 shuffled
+ * from the seed, and in 4D the 32 tesseract edge gradients. 2D noise is the
+ * slice at z = 0. Cheaper than {@link OpenSimplexNoise} in 2D and comparable
+ * in 3D, with more visible axis-aligned artifacts.
+ * <p>
+ * The lattice repeats every 256 units along each axis. Grid fills work out
+ * the lattice cell and fade of each coordinate once per axis and the hashes of
+ * each row once per row, and match eval bit for bit.
+ */
+public class PerlinNoise implements NoiseGenerator
+{
+	//Empirical bounds on the magnitude of the output: the largest values found by hill
+	//climbing (1.0 and 1.013), widened by the same margin as OpenSimplexNoise's bounds.
+	public static final double MAX_VALUE_2D = 1.0 * OpenSimplexNoise.BOUND_MARGIN;
+	public static final double MAX_VALUE_3D = 1.013 * OpenSimplexNoise.BOUND_MARGIN;
+	//The 4D bound is the largest sum of each corner's best gradient found by hill climbing
+	//(1.537); the permutation rarely lines the gradients up that well, and climbing the noise
+	//itself only reached 1.29.
+	public static final double MAX_VALUE_4D = 1.537 * OpenSimplexNoise.BOUND_MARGIN;
+
+	private final long seed;
+
+	/**
+	 * The permutation, repeated once so that indices up to 511 need no masking.
+	 */
+	private final int[] perm = new int[512];
+
+	public PerlinNoise(long seed)
+	{
+		this.seed = seed;
+
+		Random random = new Random(seed);
+
+		for (int i = 0; i < 256; ++i)
+			this.perm[i] = i;
+
+		for (int i = 255; i > 0; --i)
+		{
+			int j = random.nextInt(i + 1);
+			int swap = this.perm[i];
+			this.perm[i] = this.perm[j];
+			this.perm[j] = swap;
+		}
+
+		System.arraycopy(this.perm, 0, this.perm, 256, 256);
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	@Override
+	public double eval(double x, double y)
+	{
+		int xi = fastFloor(x), yi = fastFloor(y);
+		x -= xi;
+		y -= yi;
+
+		int[] p = this.perm;
+		int a = p[xi & 0xFF] + (yi & 0xFF), b = p[(xi + 1) & 0xFF] + (yi & 0xFF);
+
+		return this.noise(p[a], p[a + 1], p[b], p[b + 1], x, y, fade(x), fade(y));
+	}
+
+	@Override
+	public double eval(double x, double y, double z)
+	{
+		int xi = fastFloor(x), yi = fastFloor(y), zi = fastFloor(z);
+		x -= xi;
+		y -= yi;
+		z -= zi;
+
+		int[] p = this.perm;
+		int a = p[xi & 0xFF] + (yi & 0xFF), b = p[(xi + 1) & 0xFF] + (yi & 0xFF);
+
+		return this.noise(p[a], p[a + 1], p[b], p[b + 1], zi & 0xFF, x, y, z, fade(x), fade(y), fade(z));
+	}
+
+	@Override
+	public double eval(double x, double y, double z, double w)
+	{
+		int xi = fastFloor(x), yi = fastFloor(y), zi = fastFloor(z), wi = fastFloor(w);
+		x -= xi;
+		y -= yi;
+		z -= zi;
+		w -= wi;
+
+		int[] p = this.perm;
+		int a = p[xi & 0xFF] + (yi & 0xFF), b = p[(xi + 1) & 0xFF] + (yi & 0xFF);
+		int aa = p[a] + (zi & 0xFF), ab = p[a + 1] + (zi & 0xFF), ba = p[b] + (zi & 0xFF), bb = p[b + 1] + (zi & 0xFF);
+		double u = fade(x), v = fade(y), s = fade(z);
+
+		return lerp(fade(w),
+				this.noise(aa, ab, ba, bb, wi & 0xFF, x, y, z, w, u, v, s),
+				this.noise(aa, ab, ba, bb, (wi & 0xFF) + 1, x, y, z, w - 1, u, v, s));
+	}
+
+	/**
+	 * Blends the contributions of the 8 corners of a cell in the cube of the 4D
+	 * lattice at one w.
+	 *
+	 * @param aa
+	 *            the hash of the row of corners along w at the low x, y and z
+	 *            of the cell, and likewise for the others.
+	 * @param wi
+	 *            the w of the cube, masked to 0 to 255, or one more.
+	 */
+	private double noise(int aa, int ab, int ba, int bb, int wi, double x, double y, double z, double w, double u, double v, double s)
+	{
+		int[] p = this.perm;
+
+		return lerp(s,
+				lerp(v,
+						lerp(u, grad(p[p[aa] + wi], x, y, z, w), grad(p[p[ba] + wi], x - 1, y, z, w)),
+						lerp(u, grad(p[p[ab] + wi], x, y - 1, z, w), grad(p[p[bb] + wi], x - 1, y - 1, z, w))),
+				lerp(v,
+						lerp(u, grad(p[p[aa + 1] + wi], x, y, z - 1, w), grad(p[p[ba + 1] + wi], x - 1, y, z - 1, w)),
+						lerp(u, grad(p[p[ab + 1] + wi], x, y - 1, z - 1, w), grad(p[p[bb + 1] + wi], x - 1, y - 1, z - 1, w))));
+	}
+
+	/**
+	 * Blends the contributions of the 8 corners of a cell.
+	 *
+	 * @param aa
+	 *            the hash of the row of corners at the low x and y of the cell,
+	 *            and likewise for the others.
+	 * @param zi
+	 *            the z of the cell, masked to 0 to 255.
+	 */
+	private double noise(int aa, int ab, int ba, int bb, int zi, double x, double y, double z, double u, double v, double w)
+	{
+		int[] p = this.perm;
+
+		return lerp(w,
+				lerp(v,
+						lerp(u, grad(p[aa + zi], x, y, z), grad(p[ba + zi], x - 1, y, z)),
+						lerp(u, grad(p[ab + zi], x, y - 1, z), grad(p[bb + zi], x - 1, y - 1, z))),
+				lerp(v,
+						lerp(u, grad(p[aa + zi + 1], x, y, z - 1), grad(p[ba + zi + 1], x - 1, y, z - 1)),
+						lerp(u, grad(p[ab + zi + 1], x, y - 1, z - 1), grad(p[bb + zi + 1], x - 1, y - 1, z - 1))));
+	}
+
+	/**
+	 * Blends the contributions of the 4 corners of a cell at z = 0.
+	 */
+	private double noise(int aa, int ab, int ba, int bb, double x, double y, double u, double v)
+	{
+		int[] p = this.perm;
+
+		return lerp(v,
+				lerp(u, grad(p[aa], x, y, 0D), grad(p[ba], x - 1, y, 0D)),
+				lerp(u, grad(p[ab], x, y - 1, 0D), grad(p[bb], x - 1, y - 1, 0D)));
+	}
+
+	@Override
+	public void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+	{
+		out[0] = -MAX_VALUE_2D;
+		out[1] = MAX_VALUE_2D;
+	}
+
+	@Override
+	public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out)
+	{
+		out[0] = -MAX_VALUE_3D;
+		out[1] = MAX_VALUE_3D;
+	}
+
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		int[] p = this.perm;
+		Axis axisX = new Axis(x, stepX, sizeX);
+		Axis axisY = new Axis(y, stepY, sizeY);
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			int pa = p[axisX.cells[i]], pb = p[axisX.cells[i] + 1];
+			double fx = axisX.fractions[i], u = axisX.fades[i];
+
+			for (int j = 0; j < sizeY; ++j)
+			{
+				int a = pa + axisY.cells[j], b = pb + axisY.cells[j];
+				buffer[index++] = this.noise(p[a], p[a + 1], p[b], p[b + 1], fx, axisY.fractions[j], u, axisY.fades[j]);
+			}
+		}
+	}
+
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		int[] p = this.perm;
+		Axis axisX = new Axis(x, stepX, sizeX);
+		Axis axisY = new Axis(y, stepY, sizeY);
+		Axis axisZ = new Axis(z, stepZ, sizeZ);
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			int pa = p[axisX.cells[i]], pb = p[axisX.cells[i] + 1];
+			double fx = axisX.fractions[i], u = axisX.fades[i];
+
+			for (int j = 0; j < sizeY; ++j)
+			{
+				int a = pa + axisY.cells[j], b = pb + axisY.cells[j];
+				int aa = p[a], ab = p[a + 1], ba = p[b], bb = p[b + 1];
+				double fy = axisY.fractions[j], v = axisY.fades[j];
+
+				for (int k = 0; k < sizeZ; ++k)
+					buffer[index++] = this.noise(aa, ab, ba, bb, axisZ.cells[k], fx, fy, axisZ.fractions[k], u, v, axisZ.fades[k]);
+			}
+		}
+	}
+
+	/**
+	 * The lattice cells, fractions and fades of the samples of a grid along one
+	 * axis.
+	 */
+	private static final class Axis
+	{
+		/**
+		 * The cell of each sample, masked to 0 to 255.
+		 */
+		private final int[] cells;
+		private final double[] fractions;
+		private final double[] fades;
+
+		private Axis(double start, double step, int size)
+		{
+			this.cells = new int[size];
+			this.fractions = new double[size];
+			this.fades = new double[size];
+
+			for (int i = 0; i < size; ++i)
+			{
+				double coordinate = start + i * step;
+				int cell = fastFloor(coordinate);
+
+				this.cells[i] = cell & 0xFF;
+				this.fractions[i] = coordinate - cell;
+				this.fades[i] = fade(this.fractions[i]);
+			}
+		}
+	}
+
+	private static double fade(double t)
+	{
+		return t * t * t * (t * (t * 6D - 15D) + 10D);
+	}
+
+	private static double lerp(double t, double a, double b)
+	{
+		return a + t * (b - a);
+	}
+
+	/**
+	 * @return the dot product of the offset from a corner with the corner's
+	 *         gradient, one of the 12 cube edge directions picked by the low 4
+	 *         bits of its hash, 4 of them twice.
+	 */
+	private static double grad(int hash, double x, double y, double z)
+	{
+		int h = hash & 15;
+		double u = h < 8 ? x : y;
+		double v = h < 4 ? y : h == 12 || h == 14 ? x : z;
+		return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+	}
+
+	/**
+	 * @return the dot product of the offset from a 4D corner with the corner's
+	 *         gradient, one of the 32 directions to the middles of the edges of
+	 *         the tesseract picked by the low 5 bits of its hash, as in Stefan
+	 *         Gustavson's 4D Perlin noise.
+	 */
+	private static double grad(int hash, double x, double y, double z, double w)
+	{
+		int h = hash & 31;
+		double a = h < 24 ? x : y;
+		double b = h < 16 ? y : z;
+		double c = h < 8 ? z : w;
+		return ((h & 1) == 0 ? a : -a) + ((h & 2) == 0 ? b : -b) + ((h & 4) == 0 ? c : -c);
+	}
+
+	private static int fastFloor(double x)
+	{
+		int xi = (int) x;
+		return x < xi ? xi - 1 : xi;
+	}
+}
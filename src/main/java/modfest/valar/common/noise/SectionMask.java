@@ -0,0 +1,153 @@
+package modfest.valar.common.noise;
+
+/**
+ * Packed masks of where a noise exceeds a threshold over a 16 by 16 by 16
+ * chunk section, one bit per block in a <code>long[64]</code>. Block (x, y, z)
+ * is bit <code>(x << 8) | (y << 4) | z</code>, matching the sample order of
+ * {@link NoiseGenerator#fill(double[], double, double, double, double, double, double, int, int, int)},
+ * so each word holds four z rows. Masks sampled with different noises or
+ * thresholds can be combined word by word.
+ */
+public final class SectionMask
+{
+	private SectionMask() {}
+
+	/**
+	 * Blocks along each side of a section.
+	 */
+	public static final int SIZE = 16;
+
+	/**
+	 * Longs in a section mask.
+	 */
+	public static final int WORDS = SIZE * SIZE * SIZE / Long.SIZE;
+
+	private static final ThreadLocal<double[]> BUFFERS = ThreadLocal.withInitial(() -> new double[SIZE * SIZE * SIZE]);
+
+	/**
+	 * Samples the noise over a section with one bulk fill and packs whether each
+	 * sample is above the threshold into the mask. If the noise's
+	 * {@link NoiseGenerator#fillBounds(double, double, double, double, double, double, int, int, int, double[]) fill bounds}
+	 * show that the whole section is on one side of the threshold, the mask is
+	 * filled without sampling.
+	 *
+	 * @param noise
+	 *            the noise to sample.
+	 * @param x
+	 *            the x coordinate of block (0, 0, 0).
+	 * @param y
+	 *            the y coordinate of block (0, 0, 0).
+	 * @param z
+	 *            the z coordinate of block (0, 0, 0).
+	 * @param stepX
+	 *            the distance between blocks along x.
+	 * @param stepY
+	 *            the distance between blocks along y.
+	 * @param stepZ
+	 *            the distance between blocks along z.
+	 * @param threshold
+	 *            the threshold the noise has to exceed for a bit to be set.
+	 * @param mask
+	 *            the mask to write, at least {@link #WORDS} long.
+	 */
+	public static void sample(NoiseGenerator noise, double x, double y, double z, double stepX, double stepY, double stepZ, double threshold, long[] mask)
+	{
+		double[] buffer = BUFFERS.get();
+		noise.fillBounds(x, y, z, stepX, stepY, stepZ, SIZE, SIZE, SIZE, buffer);
+
+		if (buffer[0] > threshold || buffer[1] <= threshold)
+		{
+			long fill = buffer[0] > threshold ? -1L : 0L;
+
+			for (int i = 0; i < WORDS; ++i)
+				mask[i] = fill;
+
+			return;
+		}
+
+		noise.fill(buffer, x, y, z, stepX, stepY, stepZ, SIZE, SIZE, SIZE);
+		pack(buffer, threshold, mask);
+	}
+
+	/**
+	 * Packs whether each of the first 4096 values is above the threshold into
+	 * the mask.
+	 *
+	 * @param values
+	 *            the values, in section order.
+	 * @param threshold
+	 *            the threshold a value has to exceed for its bit to be set.
+	 * @param mask
+	 *            the mask to write, at least {@link #WORDS} long.
+	 */
+	public static void pack(double[] values, double threshold, long[] mask)
+	{
+		int index = 0;
+
+		for (int i = 0; i < WORDS; ++i)
+		{
+			long word = 0L;
+
+			for (int bit = 0; bit < Long.SIZE; ++bit)
+				word |= (values[index++] > threshold ? 1L : 0L) << bit;
+
+			mask[i] = word;
+		}
+	}
+
+	public static boolean get(long[] mask, int x, int y, int z)
+	{
+		int index = (x << 8) | (y << 4) | z;
+		return (mask[index >>> 6] & (1L << index)) != 0L;
+	}
+
+	public static void set(long[] mask, int x, int y, int z, boolean value)
+	{
+		int index = (x << 8) | (y << 4) | z;
+
+		if (value)
+			mask[index >>> 6] |= 1L << index;
+		else
+			mask[index >>> 6] &= ~(1L << index);
+	}
+
+	/**
+	 * Keeps only the bits also set in the other mask.
+	 */
+	public static void and(long[] mask, long[] other)
+	{
+		for (int i = 0; i < WORDS; ++i)
+			mask[i] &= other[i];
+	}
+
+	/**
+	 * Adds the bits set in the other mask.
+	 */
+	public static void or(long[] mask, long[] other)
+	{
+		for (int i = 0; i < WORDS; ++i)
+			mask[i] |= other[i];
+	}
+
+	/**
+	 * Clears the bits set in the other mask.
+	 */
+	public static void andNot(long[] mask, long[] other)
+	{
+		for (int i = 0; i < WORDS; ++i)
+			mask[i] &= ~other[i];
+	}
+
+	/**
+	 * @return the number of set bits.
+	 */
+	public static int count(long[] mask)
+	{
+		int count = 0;
+
+		for (int i = 0; i < WORDS; ++i)
+			count += Long.bitCount(mask[i]);
+
+		return count;
+	}
+}
@@ -0,0 +1,279 @@
+package modfest.valar.common.noise;
+
+import java.util.Arrays;
+
+/**
+ * OpenSimplex2S, the smooth OpenSimplex2 noise. The falloff radius of every
+ * lattice point reaches as far as its nearest neighbours, which gives
+ * smoother noise with fewer visible lattice artifacts than
+ * {@link FastOpenSimplex2Noise}, at about twice the cost.
+ * <p>
+ * The points that can reach a sample are found in tables built when the class
+ * is loaded. The unit cell of the lattice is divided into 4 parts along each
+ * axis, and each part lists every point whose falloff reaches into it.
+ */
+public class SmoothOpenSimplex2Noise extends OpenSimplex2Noise
+{
+	private static final double RSQUARED_2D = 2.0 / 3.0;
+	private static final double RSQUARED_3D = 3.0 / 4.0;
+	private static final double RSQUARED_4D = 4.0 / 5.0;
+
+	// Scale the output to about [-1, 1], from the largest values found by hill climbing.
+	private static final double[] GRADIENTS_2D = gradients2D(0.05481866495625118);
+	private static final double[] GRADIENTS_3D = gradients3D(0.2781926117527186);
+	private static final double[] GRADIENTS_4D = gradients4D(0.38881);
+
+	private static final int DIVISIONS = 4;
+
+	private static final Candidates CANDIDATES_2D = new Candidates(2, UNSKEW_2D, RSQUARED_2D, new double[] { 0 }, new long[] { 0 });
+	private static final Candidates CANDIDATES_3D = new Candidates(3, 0, RSQUARED_3D, new double[] { 0, 0.5 }, new long[] { 0, SEED_FLIP_3D });
+	private static final Candidates CANDIDATES_4D = new Candidates(4, UNSKEW_4D, RSQUARED_4D,
+			new double[] { 0, LATTICE_STEP_4D, 2 * LATTICE_STEP_4D, 3 * LATTICE_STEP_4D, 4 * LATTICE_STEP_4D },
+			new long[] { 0, SEED_OFFSET_4D, 2 * SEED_OFFSET_4D, 3 * SEED_OFFSET_4D, 4 * SEED_OFFSET_4D });
+
+	/**
+	 * Creates the noise with the lattice oriented for slices in the xz plane.
+	 */
+	public SmoothOpenSimplex2Noise(long seed)
+	{
+		this(seed, Orientation.IMPROVE_XZ);
+	}
+
+	public SmoothOpenSimplex2Noise(long seed, Orientation orientation)
+	{
+		super(seed, orientation);
+	}
+
+	@Override
+	double eval2D(long seed, double xs, double ys)
+	{
+		int xsb = fastFloor(xs), ysb = fastFloor(ys);
+		double xsi = xs - xsb, ysi = ys - ysb;
+		long xsbp = xsb * PRIME_X, ysbp = ysb * PRIME_Y;
+		double t = (xsi + ysi) * UNSKEW_2D;
+		double xi = xsi + t, yi = ysi + t;
+
+		Candidates candidates = CANDIDATES_2D;
+		int part = part(xsi) | part(ysi) << 2;
+		double value = 0;
+
+		for (int point = candidates.start[part], end = candidates.start[part + 1]; point < end; ++point)
+		{
+			double dx = xi - candidates.offsets[point << 1];
+			double dy = yi - candidates.offsets[(point << 1) | 1];
+			double a = RSQUARED_2D - dx * dx - dy * dy;
+
+			if (a > 0)
+				value += (a * a) * (a * a) * gradient(GRADIENTS_2D, seed, xsbp + candidates.primes[point << 1], ysbp + candidates.primes[(point << 1) | 1], dx, dy);
+		}
+
+		return value;
+	}
+
+	@Override
+	double eval3D(long seed, double xr, double yr, double zr)
+	{
+		int xrb = fastFloor(xr), yrb = fastFloor(yr), zrb = fastFloor(zr);
+		double xi = xr - xrb, yi = yr - yrb, zi = zr - zrb;
+		long xrbp = xrb * PRIME_X, yrbp = yrb * PRIME_Y, zrbp = zrb * PRIME_Z;
+
+		Candidates candidates = CANDIDATES_3D;
+		int part = part(xi) | part(yi) << 2 | part(zi) << 4;
+		double value = 0;
+
+		for (int point = candidates.start[part], end = candidates.start[part + 1]; point < end; ++point)
+		{
+			int o = point * 3;
+			double dx = xi - candidates.offsets[o];
+			double dy = yi - candidates.offsets[o + 1];
+			double dz = zi - candidates.offsets[o + 2];
+			double a = RSQUARED_3D - dx * dx - dy * dy - dz * dz;
+
+			if (a > 0)
+				value += (a * a) * (a * a) * gradient(GRADIENTS_3D, seed ^ candidates.seeds[point], xrbp + candidates.primes[o], yrbp + candidates.primes[o + 1], zrbp + candidates.primes[o + 2], dx, dy, dz);
+		}
+
+		return value;
+	}
+
+	@Override
+	double eval4D(long seed, double xs, double ys, double zs, double ws)
+	{
+		int xsb = fastFloor(xs), ysb = fastFloor(ys), zsb = fastFloor(zs), wsb = fastFloor(ws);
+		double xsi = xs - xsb, ysi = ys - ysb, zsi = zs - zsb, wsi = ws - wsb;
+		long xsbp = xsb * PRIME_X, ysbp = ysb * PRIME_Y, zsbp = zsb * PRIME_Z, wsbp = wsb * PRIME_W;
+		double ssi = (xsi + ysi + zsi + wsi) * UNSKEW_4D;
+		double xi = xsi + ssi, yi = ysi + ssi, zi = zsi + ssi, wi = wsi + ssi;
+
+		Candidates candidates = CANDIDATES_4D;
+		int part = part(xsi) | part(ysi) << 2 | part(zsi) << 4 | part(wsi) << 6;
+		double value = 0;
+
+		for (int point = candidates.start[part], end = candidates.start[part + 1]; point < end; ++point)
+		{
+			int o = point << 2;
+			double dx = xi - candidates.offsets[o];
+			double dy = yi - candidates.offsets[o + 1];
+			double dz = zi - candidates.offsets[o + 2];
+			double dw = wi - candidates.offsets[o + 3];
+			double a = RSQUARED_4D - (dx * dx + dy * dy) - (dz * dz + dw * dw);
+
+			if (a > 0)
+				value += (a * a) * (a * a) * gradient(GRADIENTS_4D, seed + candidates.seeds[point], xsbp + candidates.primes[o], ysbp + candidates.primes[o + 1], zsbp + candidates.primes[o + 2], wsbp + candidates.primes[o + 3], dx, dy, dz, dw);
+		}
+
+		return value;
+	}
+
+	/**
+	 * @return which of the divisions of the unit interval the offset is in. An
+	 *         offset rounded up to 1 counts as the last one.
+	 */
+	private static int part(double offset)
+	{
+		return Math.min((int) (offset * DIVISIONS), DIVISIONS - 1);
+	}
+
+	/**
+	 * The points that can reach each part of the unit cell of a lattice made of
+	 * one or more copies of the integer grid in skewed coordinates, each offset
+	 * along the main diagonal.
+	 */
+	private static final class Candidates
+	{
+		/**
+		 * The first point of each part, and one past the last point of the last
+		 * part.
+		 */
+		private final int[] start;
+		/**
+		 * The unskewed position of each point relative to the base of the cell.
+		 */
+		private final double[] offsets;
+		/**
+		 * The skewed integer position of each point relative to the base of the
+		 * cell, times the prime of each axis.
+		 */
+		private final long[] primes;
+		/**
+		 * The seed adjustment of the copy each point is in.
+		 */
+		private final long[] seeds;
+
+		private Candidates(int dimensions, double unskew, double rSquared, double[] copyOffsets, long[] copySeeds)
+		{
+			final int low = -2, span = 6;
+			long[] axisPrimes = { PRIME_X, PRIME_Y, PRIME_Z, PRIME_W };
+			int parts = 1 << (2 * dimensions);
+			int lattice = 1;
+
+			for (int i = 0; i < dimensions; ++i)
+				lattice *= span;
+
+			// Every point near the cell, and the skewed position within the cell of each half part corner.
+			double[] points = new double[copyOffsets.length * lattice * dimensions];
+			int[] positions = new int[copyOffsets.length * lattice * dimensions];
+			double size = 1.0 / (2 * DIVISIONS);
+
+			for (int copy = 0, p = 0; copy < copyOffsets.length; ++copy)
+			{
+				for (int n = 0; n < lattice; ++n, p += dimensions)
+				{
+					for (int axis = 0, m = n; axis < dimensions; ++axis, m /= span)
+					{
+						positions[p + axis] = m % span + low;
+						points[p + axis] = positions[p + axis] + copyOffsets[copy];
+					}
+
+					unskew(points, p, dimensions, unskew);
+				}
+			}
+
+			// Every piece of a part is the same parallelotope, so they share their circumradius.
+			double[] corner = new double[dimensions], centre = new double[dimensions];
+			Arrays.fill(centre, size * 0.5);
+			unskew(centre, 0, dimensions, unskew);
+			double circumradius = 0;
+
+			for (int c = 0; c < 1 << dimensions; ++c)
+			{
+				for (int axis = 0; axis < dimensions; ++axis)
+					corner[axis] = (c >> axis & 1) * size;
+
+				unskew(corner, 0, dimensions, unskew);
+				circumradius = Math.max(circumradius, distance(corner, 0, centre, dimensions));
+			}
+
+			double reach = Math.sqrt(rSquared) + circumradius + 1e-9;
+			int[] start = new int[parts + 1];
+			int[] chosen = new int[parts * points.length / dimensions];
+			int count = 0;
+
+			for (int part = 0; part < parts; ++part)
+			{
+				start[part] = count;
+
+				for (int point = 0; point < points.length / dimensions; ++point)
+				{
+					boolean reaches = false;
+
+					// Each part is split into halves along every axis, which prunes points that only reach its corners.
+					for (int piece = 0; piece < 1 << dimensions && !reaches; ++piece)
+					{
+						for (int axis = 0; axis < dimensions; ++axis)
+							centre[axis] = ((part >> (2 * axis) & 3) * 2 + (piece >> axis & 1)) * size + size * 0.5;
+
+						unskew(centre, 0, dimensions, unskew);
+						reaches = distance(points, point * dimensions, centre, dimensions) < reach;
+					}
+
+					if (reaches)
+						chosen[count++] = point;
+				}
+			}
+
+			start[parts] = count;
+			this.start = start;
+			this.offsets = new double[count * dimensions];
+			this.primes = new long[count * dimensions];
+			this.seeds = new long[count];
+
+			for (int i = 0; i < count; ++i)
+			{
+				int point = chosen[i];
+
+				for (int axis = 0; axis < dimensions; ++axis)
+				{
+					this.offsets[i * dimensions + axis] = points[point * dimensions + axis];
+					this.primes[i * dimensions + axis] = positions[point * dimensions + axis] * axisPrimes[axis];
+				}
+
+				this.seeds[i] = copySeeds[point / lattice];
+			}
+		}
+
+		private static void unskew(double[] position, int offset, int dimensions, double unskew)
+		{
+			double sum = 0;
+
+			for (int axis = 0; axis < dimensions; ++axis)
+				sum += position[offset + axis];
+
+			for (int axis = 0; axis < dimensions; ++axis)
+				position[offset + axis] += sum * unskew;
+		}
+
+		private static double distance(double[] a, int offset, double[] b, int dimensions)
+		{
+			double sum = 0;
+
+			for (int axis = 0; axis < dimensions; ++axis)
+			{
+				double d = a[offset + axis] - b[axis];
+				sum += d * d;
+			}
+
+			return Math.sqrt(sum);
+		}
+	}
+}
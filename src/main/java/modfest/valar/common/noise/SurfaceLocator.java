@@ -0,0 +1,208 @@
+package modfest.valar.common.noise;
+
+/**
+ * Finds the surface of a column of 3D density noise: the highest point, going
+ * down from the top of a range of y, where the density rises above a
+ * threshold. The surface is first bracketed by stepping down the column, then
+ * refined to within a tolerance by secant steps, falling back to bisection
+ * whenever a secant step fails to halve the bracket.
+ * <p>
+ * Coarse locators step by a fixed stride, so can step over solid features
+ * thinner than the stride, and take a few dozen samples per column rather
+ * than one per block. Bounded locators step further where the density is
+ * far from the threshold: as far as a Lipschitz bound on the density allows
+ * without passing it, and never less than the stride. They only step over a
+ * feature as thick as the stride if the density's gradient exceeds the bound,
+ * so with a stride of one block and a sound bound they find every solid run a
+ * block or more thick, in fewer samples than a scan of every block. For
+ * {@link OctaveNoiseGenerator} densities the step comes from
+ * {@link OctaveNoiseGenerator#maxDistance3D(double)}, which bounds each octave
+ * separately using the OpenSimplex bounds. Those were found by sampling
+ * rather than derived, and are widened by
+ * {@link OpenSimplexNoise#BOUND_MARGIN}, so are empirical: a feature could in
+ * principle be missed where the noise goes past them. Locators hold no state
+ * between columns, so are threadsafe if the density is.
+ */
+public class SurfaceLocator
+{
+	private final NoiseGenerator density;
+	private final double threshold, tolerance;
+
+	/**
+	 * The shortest step taken while bracketing.
+	 */
+	private final double stride;
+
+	/**
+	 * The bound on the length of the density's gradient, infinite for a
+	 * coarse locator so that it never steps further than the stride.
+	 */
+	private final double lipschitz;
+
+	/**
+	 * The density if it is octave noise bounded octave by octave, otherwise
+	 * null.
+	 */
+	private final OctaveNoiseGenerator octaves;
+
+	private SurfaceLocator(NoiseGenerator density, double threshold, double stride, double lipschitz, OctaveNoiseGenerator octaves, double tolerance)
+	{
+		if (!(stride > 0D))
+			throw new IllegalArgumentException("Stride must be positive");
+		if (!(tolerance > 0D))
+			throw new IllegalArgumentException("Tolerance must be positive");
+
+		this.density = density;
+		this.threshold = threshold;
+		this.stride = stride;
+		this.lipschitz = lipschitz;
+		this.octaves = octaves;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Creates a locator that brackets the surface with a fixed stride.
+	 *
+	 * @param stride
+	 *            the distance between samples while bracketing.
+	 * @param tolerance
+	 *            the largest bracket left around the surface once refined.
+	 */
+	public static SurfaceLocator coarse(NoiseGenerator density, double threshold, double stride, double tolerance)
+	{
+		return new SurfaceLocator(density, threshold, stride, Double.POSITIVE_INFINITY, null, tolerance);
+	}
+
+	/**
+	 * Creates a locator that steps as far as the Lipschitz bound allows while
+	 * bracketing, so does not miss features as thick as the stride unless the
+	 * gradient exceeds the bound.
+	 *
+	 * @param lipschitz
+	 *            a bound on the length of the density's gradient.
+	 * @param stride
+	 *            the shortest step taken while bracketing, which is the
+	 *            thinnest feature found wherever the bound holds.
+	 * @param tolerance
+	 *            the largest bracket left around the surface once refined.
+	 */
+	public static SurfaceLocator bounded(NoiseGenerator density, double threshold, double lipschitz, double stride, double tolerance)
+	{
+		if (!(lipschitz > 0D))
+			throw new IllegalArgumentException("Lipschitz bound must be positive");
+
+		return new SurfaceLocator(density, threshold, stride, lipschitz, null, tolerance);
+	}
+
+	/**
+	 * Creates a bounded locator using the octaves' own empirical bounds. See
+	 * {@link #bounded(NoiseGenerator, double, double, double, double)}.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if an octave has no gradient bound.
+	 */
+	public static SurfaceLocator bounded(OctaveNoiseGenerator density, double threshold, double stride, double tolerance)
+	{
+		return new SurfaceLocator(density, threshold, stride, density.maxGradient3D(), density, tolerance);
+	}
+
+	public NoiseGenerator getDensity()
+	{
+		return this.density;
+	}
+
+	public double getThreshold()
+	{
+		return this.threshold;
+	}
+
+	/**
+	 * Finds the highest surface of the column at (x, z) between minY and maxY.
+	 *
+	 * @return the estimated y where the density crosses the threshold, maxY if
+	 *         the density is already above it at maxY, or NaN if it stays at or
+	 *         below it down to minY.
+	 */
+	public double locate(double x, double z, double minY, double maxY)
+	{
+		double above = maxY;
+		double valueAbove = this.density.eval(x, maxY, z);
+
+		if (valueAbove > this.threshold)
+			return maxY;
+
+		while (above > minY)
+		{
+			double step = Math.max(this.stride, this.boundedDistance(this.threshold - valueAbove));
+			double below = Math.max(minY, above - step);
+			double valueBelow = this.density.eval(x, below, z);
+
+			if (valueBelow > this.threshold)
+				return this.refine(x, z, below, valueBelow, above, valueAbove);
+
+			above = below;
+			valueAbove = valueBelow;
+		}
+
+		return Double.NaN;
+	}
+
+	/**
+	 * @return how far the density can be sampled from a point without passing
+	 *         the threshold, given how far below it the point is.
+	 */
+	private double boundedDistance(double gap)
+	{
+		return this.octaves != null ? this.octaves.maxDistance3D(gap) : gap / this.lipschitz;
+	}
+
+	/**
+	 * Narrows a bracket with the density above the threshold at the bottom and
+	 * not at the top down to the tolerance.
+	 */
+	private double refine(double x, double z, double below, double valueBelow, double above, double valueAbove)
+	{
+		boolean bisect = false;
+
+		while (above - below > this.tolerance)
+		{
+			double width = above - below;
+			double y = bisect ? below + width * 0.5D : this.secant(below, valueBelow, above, valueAbove);
+
+			if (!(y > below && y < above))
+			{
+				y = below + width * 0.5D;
+
+				// The bracket is down to adjacent doubles.
+				if (!(y > below && y < above))
+					break;
+			}
+
+			double value = this.density.eval(x, y, z);
+
+			if (value > this.threshold)
+			{
+				below = y;
+				valueBelow = value;
+			}
+			else
+			{
+				above = y;
+				valueAbove = value;
+			}
+
+			bisect = above - below > width * 0.5D;
+		}
+
+		return this.secant(below, valueBelow, above, valueAbove);
+	}
+
+	/**
+	 * @return where the line through the ends of the bracket crosses the
+	 *         threshold.
+	 */
+	private double secant(double below, double valueBelow, double above, double valueAbove)
+	{
+		return below + (above - below) * ((valueBelow - this.threshold) / (valueBelow - valueAbove));
+	}
+}
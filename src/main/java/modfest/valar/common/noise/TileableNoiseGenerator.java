@@ -0,0 +1,161 @@
+package modfest.valar.common.noise;
+
+import java.util.Arrays;
+
+/**
+ * Seamlessly tileable 2D noise, made by mapping the plane onto a torus in the
+ * 4D noise of another generator. x is wound around a circle in the x and y
+ * axes of the 4D noise and y around a circle in its z and w axes, each with a
+ * circumference of its period, so features keep about their size and the
+ * noise repeats every periodX along x and periodY along y with no seams.
+ * <p>
+ * Fill a single period with {@link #fillTile(double[], int, int)} to bake a
+ * repeating texture. In 3D the tiled 2D noise is extruded along z, so it can
+ * feed 3D consumers such as {@link SectionMask}; noise that also varies and
+ * tiles along z would need 6D noise.
+ */
+public class TileableNoiseGenerator implements NoiseGenerator
+{
+	private final NoiseGenerator parent;
+	private final double periodX, periodY;
+
+	/**
+	 * The angle per unit along each axis, and the radius of each circle.
+	 */
+	private final double angleX, angleY, radiusX, radiusY;
+
+	/**
+	 * @param parent
+	 *            the generator whose 4D noise is sampled.
+	 * @param periodX
+	 *            the distance along x after which the noise repeats.
+	 * @param periodY
+	 *            the distance along y after which the noise repeats.
+	 * @throws IllegalArgumentException
+	 *             if a period is not positive, or the parent has no 4D noise,
+	 *             such as {@link WorleyNoise}.
+	 */
+	public TileableNoiseGenerator(NoiseGenerator parent, double periodX, double periodY)
+	{
+		if (!(periodX > 0D) || !(periodY > 0D))
+			throw new IllegalArgumentException("Periods must be positive");
+
+		try
+		{
+			parent.eval(0D, 0D, 0D, 0D);
+		}
+		catch (UnsupportedOperationException e)
+		{
+			throw new IllegalArgumentException(parent.getClass().getSimpleName() + " has no 4D noise", e);
+		}
+
+		this.parent = parent;
+		this.periodX = periodX;
+		this.periodY = periodY;
+		this.angleX = 2D * Math.PI / periodX;
+		this.angleY = 2D * Math.PI / periodY;
+		this.radiusX = periodX / (2D * Math.PI);
+		this.radiusY = periodY / (2D * Math.PI);
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.parent.getSeed();
+	}
+
+	public NoiseGenerator getParent()
+	{
+		return this.parent;
+	}
+
+	public double getPeriodX()
+	{
+		return this.periodX;
+	}
+
+	public double getPeriodY()
+	{
+		return this.periodY;
+	}
+
+	@Override
+	public double eval(double x, double y)
+	{
+		double ax = x * this.angleX, ay = y * this.angleY;
+		return this.parent.eval(Math.cos(ax) * this.radiusX, Math.sin(ax) * this.radiusX, Math.cos(ay) * this.radiusY, Math.sin(ay) * this.radiusY);
+	}
+
+	/**
+	 * Evaluates the 2D noise at (x, y), ignoring z.
+	 */
+	@Override
+	public double eval(double x, double y, double z)
+	{
+		return this.eval(x, y);
+	}
+
+	/**
+	 * Works out the points on the circles once per row and column, and matches
+	 * eval bit for bit.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		double[] circleY = new double[sizeY << 1];
+
+		for (int j = 0; j < sizeY; ++j)
+		{
+			double ay = (y + j * stepY) * this.angleY;
+			circleY[j << 1] = Math.cos(ay) * this.radiusY;
+			circleY[(j << 1) | 1] = Math.sin(ay) * this.radiusY;
+		}
+
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			double ax = (x + i * stepX) * this.angleX;
+			double cx = Math.cos(ax) * this.radiusX, sx = Math.sin(ax) * this.radiusX;
+
+			for (int j = 0; j < sizeY; ++j)
+				buffer[index++] = this.parent.eval(cx, sx, circleY[j << 1], circleY[(j << 1) | 1]);
+		}
+	}
+
+	/**
+	 * Fills the x-y plane once and repeats each sample along z, as z does not
+	 * change the noise.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		int size = sizeX * sizeY;
+		double[] plane = FillScratch.doubles(size);
+		this.fill(plane, x, y, stepX, stepY, sizeX, sizeY);
+
+		int index = 0;
+
+		for (int n = 0; n < size; ++n)
+		{
+			Arrays.fill(buffer, index, index + sizeZ, plane[n]);
+			index += sizeZ;
+		}
+
+		FillScratch.release(plane);
+	}
+
+	/**
+	 * Fills the buffer with exactly one period of the noise, sampled sizeX by
+	 * sizeY times from the origin, using the layout of
+	 * {@link NoiseGenerator#fill(double[], double, double, double, double, int, int)}.
+	 * The samples wrap around seamlessly when tiled.
+	 *
+	 * @param buffer
+	 *            the buffer to fill, at least sizeX * sizeY long.
+	 */
+	public void fillTile(double[] buffer, int sizeX, int sizeY)
+	{
+		this.fill(buffer, 0D, 0D, this.periodX / sizeX, this.periodY / sizeY, sizeX, sizeY);
+	}
+}
@@ -0,0 +1,456 @@
+package modfest.valar.common.noise;
+
+import modfest.valar.common.rand.CellHash;
+
+/**
+ * Value noise: a random value in [-1, 1) at every integer lattice point,
+ * hashed from the seed and the point, interpolated in between. Much cheaper
+ * than gradient noise, and blockier, so it suits low importance detail such as
+ * colour jitter or decoration density.
+ * <p>
+ * Grid fills hash every lattice point the grid covers once and interpolate all
+ * the samples from those values, which is far cheaper than evaluating each
+ * sample when the step is below one. They match eval bit for bit.
+ */
+public class ValueNoise implements NoiseGenerator
+{
+	/**
+	 * How values are interpolated between lattice points.
+	 */
+	public enum Interpolation
+	{
+		/**
+		 * Multilinear interpolation of the 4 (2D), 8 (3D) or 16 (4D) surrounding
+		 * points.
+		 * Continuous, with creases along the lattice.
+		 */
+		LINEAR,
+		/**
+		 * Catmull-Rom interpolation of the 16 (2D), 64 (3D) or 256 (4D) nearest
+		 * points. Smooth, and overshoots the lattice values by up to a quarter per
+		 * axis.
+		 */
+		CUBIC;
+	}
+
+	// The largest sum of the absolute Catmull-Rom weights, at the middle of a cell.
+	private static final double CUBIC_OVERSHOOT = 1.25D;
+
+	private final long seed;
+	private final Interpolation interpolation;
+
+	public ValueNoise(long seed, Interpolation interpolation)
+	{
+		this.seed = seed;
+		this.interpolation = interpolation;
+	}
+
+	@Override
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	public Interpolation getInterpolation()
+	{
+		return this.interpolation;
+	}
+
+	@Override
+	public double eval(double x, double y)
+	{
+		int x0 = fastFloor(x), y0 = fastFloor(y);
+		double fx = x - x0, fy = y - y0;
+
+		if (this.interpolation == Interpolation.LINEAR)
+		{
+			return lerp(fx,
+					lerp(fy, this.value(x0, y0, 0), this.value(x0, y0 + 1, 0)),
+					lerp(fy, this.value(x0 + 1, y0, 0), this.value(x0 + 1, y0 + 1, 0)));
+		}
+
+		double wx0 = weight0(fx), wx1 = weight1(fx), wx2 = weight2(fx), wx3 = weight3(fx);
+		double wy0 = weight0(fy), wy1 = weight1(fy), wy2 = weight2(fy), wy3 = weight3(fy);
+
+		return cubic(wx0, wx1, wx2, wx3,
+				this.cubicY(x0 - 1, y0, wy0, wy1, wy2, wy3),
+				this.cubicY(x0, y0, wy0, wy1, wy2, wy3),
+				this.cubicY(x0 + 1, y0, wy0, wy1, wy2, wy3),
+				this.cubicY(x0 + 2, y0, wy0, wy1, wy2, wy3));
+	}
+
+	@Override
+	public double eval(double x, double y, double z)
+	{
+		int x0 = fastFloor(x), y0 = fastFloor(y), z0 = fastFloor(z);
+		double fx = x - x0, fy = y - y0, fz = z - z0;
+
+		if (this.interpolation == Interpolation.LINEAR)
+		{
+			return lerp(fx,
+					lerp(fy,
+							lerp(fz, this.value(x0, y0, z0), this.value(x0, y0, z0 + 1)),
+							lerp(fz, this.value(x0, y0 + 1, z0), this.value(x0, y0 + 1, z0 + 1))),
+					lerp(fy,
+							lerp(fz, this.value(x0 + 1, y0, z0), this.value(x0 + 1, y0, z0 + 1)),
+							lerp(fz, this.value(x0 + 1, y0 + 1, z0), this.value(x0 + 1, y0 + 1, z0 + 1))));
+		}
+
+		double wx0 = weight0(fx), wx1 = weight1(fx), wx2 = weight2(fx), wx3 = weight3(fx);
+		double wy0 = weight0(fy), wy1 = weight1(fy), wy2 = weight2(fy), wy3 = weight3(fy);
+		double wz0 = weight0(fz), wz1 = weight1(fz), wz2 = weight2(fz), wz3 = weight3(fz);
+
+		return cubic(wx0, wx1, wx2, wx3,
+				this.cubicYZ(x0 - 1, y0, z0, wy0, wy1, wy2, wy3, wz0, wz1, wz2, wz3),
+				this.cubicYZ(x0, y0, z0, wy0, wy1, wy2, wy3, wz0, wz1, wz2, wz3),
+				this.cubicYZ(x0 + 1, y0, z0, wy0, wy1, wy2, wy3, wz0, wz1, wz2, wz3),
+				this.cubicYZ(x0 + 2, y0, z0, wy0, wy1, wy2, wy3, wz0, wz1, wz2, wz3));
+	}
+
+	@Override
+	public double eval(double x, double y, double z, double w)
+	{
+		int x0 = fastFloor(x), y0 = fastFloor(y), z0 = fastFloor(z), w0 = fastFloor(w);
+		double fx = x - x0, fy = y - y0, fz = z - z0, fw = w - w0;
+
+		if (this.interpolation == Interpolation.LINEAR)
+			return lerp(fw, this.linearXYZ(x0, y0, z0, w0, fx, fy, fz), this.linearXYZ(x0, y0, z0, w0 + 1, fx, fy, fz));
+
+		double wx0 = weight0(fx), wx1 = weight1(fx), wx2 = weight2(fx), wx3 = weight3(fx);
+		double wy0 = weight0(fy), wy1 = weight1(fy), wy2 = weight2(fy), wy3 = weight3(fy);
+		double wz0 = weight0(fz), wz1 = weight1(fz), wz2 = weight2(fz), wz3 = weight3(fz);
+		double ww0 = weight0(fw), ww1 = weight1(fw), ww2 = weight2(fw), ww3 = weight3(fw);
+
+		return cubic(wx0, wx1, wx2, wx3,
+				this.cubicYZW(x0 - 1, y0, z0, w0, wy0, wy1, wy2, wy3, wz0, wz1, wz2, wz3, ww0, ww1, ww2, ww3),
+				this.cubicYZW(x0, y0, z0, w0, wy0, wy1, wy2, wy3, wz0, wz1, wz2, wz3, ww0, ww1, ww2, ww3),
+				this.cubicYZW(x0 + 1, y0, z0, w0, wy0, wy1, wy2, wy3, wz0, wz1, wz2, wz3, ww0, ww1, ww2, ww3),
+				this.cubicYZW(x0 + 2, y0, z0, w0, wy0, wy1, wy2, wy3, wz0, wz1, wz2, wz3, ww0, ww1, ww2, ww3));
+	}
+
+	/**
+	 * Trilinearly interpolates the cube of lattice points at w.
+	 */
+	private double linearXYZ(int x0, int y0, int z0, int w, double fx, double fy, double fz)
+	{
+		return lerp(fx,
+				lerp(fy,
+						lerp(fz, this.value(x0, y0, z0, w), this.value(x0, y0, z0 + 1, w)),
+						lerp(fz, this.value(x0, y0 + 1, z0, w), this.value(x0, y0 + 1, z0 + 1, w))),
+				lerp(fy,
+						lerp(fz, this.value(x0 + 1, y0, z0, w), this.value(x0 + 1, y0, z0 + 1, w)),
+						lerp(fz, this.value(x0 + 1, y0 + 1, z0, w), this.value(x0 + 1, y0 + 1, z0 + 1, w))));
+	}
+
+	private double cubicY(int x, int y0, double wy0, double wy1, double wy2, double wy3)
+	{
+		return cubic(wy0, wy1, wy2, wy3, this.value(x, y0 - 1, 0), this.value(x, y0, 0), this.value(x, y0 + 1, 0), this.value(x, y0 + 2, 0));
+	}
+
+	private double cubicYZ(int x, int y0, int z0, double wy0, double wy1, double wy2, double wy3, double wz0, double wz1, double wz2, double wz3)
+	{
+		return cubic(wy0, wy1, wy2, wy3,
+				this.cubicZ(x, y0 - 1, z0, wz0, wz1, wz2, wz3),
+				this.cubicZ(x, y0, z0, wz0, wz1, wz2, wz3),
+				this.cubicZ(x, y0 + 1, z0, wz0, wz1, wz2, wz3),
+				this.cubicZ(x, y0 + 2, z0, wz0, wz1, wz2, wz3));
+	}
+
+	private double cubicZ(int x, int y, int z0, double wz0, double wz1, double wz2, double wz3)
+	{
+		return cubic(wz0, wz1, wz2, wz3, this.value(x, y, z0 - 1), this.value(x, y, z0), this.value(x, y, z0 + 1), this.value(x, y, z0 + 2));
+	}
+
+	private double cubicYZW(int x, int y0, int z0, int w0, double wy0, double wy1, double wy2, double wy3, double wz0, double wz1, double wz2, double wz3, double ww0, double ww1, double ww2, double ww3)
+	{
+		return cubic(wy0, wy1, wy2, wy3,
+				this.cubicZW(x, y0 - 1, z0, w0, wz0, wz1, wz2, wz3, ww0, ww1, ww2, ww3),
+				this.cubicZW(x, y0, z0, w0, wz0, wz1, wz2, wz3, ww0, ww1, ww2, ww3),
+				this.cubicZW(x, y0 + 1, z0, w0, wz0, wz1, wz2, wz3, ww0, ww1, ww2, ww3),
+				this.cubicZW(x, y0 + 2, z0, w0, wz0, wz1, wz2, wz3, ww0, ww1, ww2, ww3));
+	}
+
+	private double cubicZW(int x, int y, int z0, int w0, double wz0, double wz1, double wz2, double wz3, double ww0, double ww1, double ww2, double ww3)
+	{
+		return cubic(wz0, wz1, wz2, wz3,
+				this.cubicW(x, y, z0 - 1, w0, ww0, ww1, ww2, ww3),
+				this.cubicW(x, y, z0, w0, ww0, ww1, ww2, ww3),
+				this.cubicW(x, y, z0 + 1, w0, ww0, ww1, ww2, ww3),
+				this.cubicW(x, y, z0 + 2, w0, ww0, ww1, ww2, ww3));
+	}
+
+	private double cubicW(int x, int y, int z, int w0, double ww0, double ww1, double ww2, double ww3)
+	{
+		return cubic(ww0, ww1, ww2, ww3, this.value(x, y, z, w0 - 1), this.value(x, y, z, w0), this.value(x, y, z, w0 + 1), this.value(x, y, z, w0 + 2));
+	}
+
+	/**
+	 * @return the value at a lattice point, on [-1, 1). 2D noise uses the points
+	 *         at z = 0.
+	 */
+	private double value(int x, int y, int z)
+	{
+		return (CellHash.hash(this.seed, x, y, z) >> 11) * 0x1.0p-52;
+	}
+
+	/**
+	 * @return the value at a 4D lattice point, which at w = 0 is the value at
+	 *         the 3D point.
+	 */
+	private double value(int x, int y, int z, int w)
+	{
+		return (CellHash.hash(this.seed, x, y, z, w) >> 11) * 0x1.0p-52;
+	}
+
+	@Override
+	public void bounds(double minX, double minY, double maxX, double maxY, double[] out)
+	{
+		double max = this.interpolation == Interpolation.LINEAR ? 1D : CUBIC_OVERSHOOT * CUBIC_OVERSHOOT;
+		out[0] = -max;
+		out[1] = max;
+	}
+
+	@Override
+	public void bounds(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, double[] out)
+	{
+		double max = this.interpolation == Interpolation.LINEAR ? 1D : CUBIC_OVERSHOOT * CUBIC_OVERSHOOT * CUBIC_OVERSHOOT;
+		out[0] = -max;
+		out[1] = max;
+	}
+
+	/**
+	 * Hashes the lattice points under the grid once, then interpolates every
+	 * sample from them. Grids so sparse that this would hash more points than
+	 * evaluating each sample are evaluated per sample.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX, double stepY, int sizeX, int sizeY)
+	{
+		boolean cubic = this.interpolation == Interpolation.CUBIC;
+		Axis axisX = new Axis(x, stepX, sizeX, cubic);
+		Axis axisY = new Axis(y, stepY, sizeY, cubic);
+		int latticeY = axisY.span;
+
+		if ((long) axisX.span * latticeY > (long) sizeX * sizeY * (cubic ? 16 : 4))
+		{
+			NoiseGenerator.super.fill(buffer, x, y, stepX, stepY, sizeX, sizeY);
+			return;
+		}
+
+		double[] lattice = new double[axisX.span * latticeY];
+
+		for (int a = 0, index = 0; a < axisX.span; ++a)
+		{
+			for (int b = 0; b < latticeY; ++b)
+				lattice[index++] = this.value(axisX.min + a, axisY.min + b, 0);
+		}
+
+		double[] wx = axisX.weights, wy = axisY.weights;
+		double[] rows = new double[4];
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			int rowX = axisX.cells[i] * latticeY;
+
+			for (int j = 0; j < sizeY; ++j)
+			{
+				int corner = rowX + axisY.cells[j];
+
+				if (!cubic)
+				{
+					double fx = wx[i], fy = wy[j];
+					buffer[index++] = lerp(fx,
+							lerp(fy, lattice[corner], lattice[corner + 1]),
+							lerp(fy, lattice[corner + latticeY], lattice[corner + latticeY + 1]));
+					continue;
+				}
+
+				int ox = i << 2, oy = j << 2;
+
+				for (int a = 0; a < 4; ++a, corner += latticeY)
+					rows[a] = cubic(wy[oy], wy[oy + 1], wy[oy + 2], wy[oy + 3], lattice[corner], lattice[corner + 1], lattice[corner + 2], lattice[corner + 3]);
+
+				buffer[index++] = cubic(wx[ox], wx[ox + 1], wx[ox + 2], wx[ox + 3], rows[0], rows[1], rows[2], rows[3]);
+			}
+		}
+	}
+
+	/**
+	 * Hashes the lattice points under the grid once, then interpolates every
+	 * sample from them. Grids so sparse that this would hash more points than
+	 * evaluating each sample are evaluated per sample.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ)
+	{
+		boolean cubic = this.interpolation == Interpolation.CUBIC;
+		Axis axisX = new Axis(x, stepX, sizeX, cubic);
+		Axis axisY = new Axis(y, stepY, sizeY, cubic);
+		Axis axisZ = new Axis(z, stepZ, sizeZ, cubic);
+		int latticeY = axisY.span, latticeZ = axisZ.span, latticeYZ = latticeY * latticeZ;
+
+		if ((long) axisX.span * latticeYZ > (long) sizeX * sizeY * sizeZ * (cubic ? 64 : 8))
+		{
+			NoiseGenerator.super.fill(buffer, x, y, z, stepX, stepY, stepZ, sizeX, sizeY, sizeZ);
+			return;
+		}
+
+		double[] lattice = new double[axisX.span * latticeYZ];
+
+		for (int a = 0, index = 0; a < axisX.span; ++a)
+		{
+			for (int b = 0; b < latticeY; ++b)
+			{
+				for (int c = 0; c < latticeZ; ++c)
+					lattice[index++] = this.value(axisX.min + a, axisY.min + b, axisZ.min + c);
+			}
+		}
+
+		double[] wx = axisX.weights, wy = axisY.weights, wz = axisZ.weights;
+		double[] rows = new double[4], planes = new double[4];
+		int index = 0;
+
+		for (int i = 0; i < sizeX; ++i)
+		{
+			int planeX = axisX.cells[i] * latticeYZ;
+
+			for (int j = 0; j < sizeY; ++j)
+			{
+				int rowXY = planeX + axisY.cells[j] * latticeZ;
+
+				for (int k = 0; k < sizeZ; ++k)
+				{
+					int corner = rowXY + axisZ.cells[k];
+
+					if (!cubic)
+					{
+						double fx = wx[i], fy = wy[j], fz = wz[k];
+						// the corners one step up along y, x, and both
+						int cy = corner + latticeZ, cx = corner + latticeYZ, cxy = cx + latticeZ;
+						buffer[index++] = lerp(fx,
+								lerp(fy,
+										lerp(fz, lattice[corner], lattice[corner + 1]),
+										lerp(fz, lattice[cy], lattice[cy + 1])),
+								lerp(fy,
+										lerp(fz, lattice[cx], lattice[cx + 1]),
+										lerp(fz, lattice[cxy], lattice[cxy + 1])));
+						continue;
+					}
+
+					int ox = i << 2, oy = j << 2, oz = k << 2;
+
+					for (int a = 0; a < 4; ++a)
+					{
+						int row = corner + a * latticeYZ;
+
+						for (int b = 0; b < 4; ++b, row += latticeZ)
+							rows[b] = cubic(wz[oz], wz[oz + 1], wz[oz + 2], wz[oz + 3], lattice[row], lattice[row + 1], lattice[row + 2], lattice[row + 3]);
+
+						planes[a] = cubic(wy[oy], wy[oy + 1], wy[oy + 2], wy[oy + 3], rows[0], rows[1], rows[2], rows[3]);
+					}
+
+					buffer[index++] = cubic(wx[ox], wx[ox + 1], wx[ox + 2], wx[ox + 3], planes[0], planes[1], planes[2], planes[3]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The lattice cells and interpolation weights of the samples of a grid
+	 * along one axis.
+	 */
+	private static final class Axis
+	{
+		/**
+		 * The lowest lattice point used, and the number of points from there to
+		 * the highest.
+		 */
+		private final int min, span;
+		/**
+		 * The first lattice point used by each sample, relative to min.
+		 */
+		private final int[] cells;
+		/**
+		 * The fraction of each sample for linear interpolation, or the four
+		 * weights of each sample for cubic.
+		 */
+		private final double[] weights;
+
+		private Axis(double start, double step, int size, boolean cubic)
+		{
+			int[] cells = new int[size];
+			double[] weights = new double[cubic ? size << 2 : size];
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+
+			for (int i = 0; i < size; ++i)
+			{
+				double coordinate = start + i * step;
+				int cell = fastFloor(coordinate);
+				double fraction = coordinate - cell;
+
+				if (cubic)
+				{
+					weights[i << 2] = weight0(fraction);
+					weights[(i << 2) | 1] = weight1(fraction);
+					weights[(i << 2) | 2] = weight2(fraction);
+					weights[(i << 2) | 3] = weight3(fraction);
+					--cell;
+				}
+				else
+				{
+					weights[i] = fraction;
+				}
+
+				cells[i] = cell;
+				min = Math.min(min, cell);
+				max = Math.max(max, cell);
+			}
+
+			for (int i = 0; i < size; ++i)
+				cells[i] -= min;
+
+			this.min = min;
+			this.span = size == 0 ? 0 : max - min + (cubic ? 4 : 2);
+			this.cells = cells;
+			this.weights = weights;
+		}
+	}
+
+	private static double lerp(double t, double a, double b)
+	{
+		return a + t * (b - a);
+	}
+
+	private static double cubic(double w0, double w1, double w2, double w3, double a, double b, double c, double d)
+	{
+		return (w0 * a + w1 * b) + (w2 * c + w3 * d);
+	}
+
+	// Catmull-Rom weights of the points at -1, 0, 1 and 2 for a sample at t.
+	private static double weight0(double t)
+	{
+		return t * ((2D - t) * t - 1D) * 0.5D;
+	}
+
+	private static double weight1(double t)
+	{
+		return (t * t * (3D * t - 5D) + 2D) * 0.5D;
+	}
+
+	private static double weight2(double t)
+	{
+		return t * ((4D - 3D * t) * t + 1D) * 0.5D;
+	}
+
+	private static double weight3(double t)
+	{
+		return (t - 1D) * t * t * 0.5D;
+	}
+
+	private static int fastFloor(double x)
+	{
+		int xi = (int) x;
+		return x < xi ? xi - 1 : xi;
+	}
+}
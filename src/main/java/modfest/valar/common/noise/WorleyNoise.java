@@ -17,8 +17,10 @@
  */
 package modfest.valar.common.noise;
 
+import java.util.Objects;
 import java.util.concurrent.ThreadLocalRandom;
 
+import modfest.valar.common.rand.CellHash;
 import modfest.valar.common.rand.XorShift;
 
 /**
@@ -52,51 +54,177 @@ import modfest.valar.common.rand.XorShift;
 public final class WorleyNoise implements NoiseGenerator
 {
 	/**
-	 * Represents a point in three dimensional space.
-	 * 
-	 * @author saybur
-	 * 
+	 * The ways of measuring the distance between a point and a feature point.
 	 */
-	private static final class Point
+	public enum DistanceMetric
 	{
-		private final double x;
-		private final double y;
-		private final double z;
+		/**
+		 * Straight line distance, the default.
+		 */
+		EUCLIDEAN,
+		/**
+		 * Sum of the distances along each axis.
+		 */
+		MANHATTAN,
+		/**
+		 * Largest of the distances along each axis.
+		 */
+		CHEBYSHEV;
+	}
 
+	/**
+	 * The ways of placing the feature point inside each cell.
+	 */
+	public enum FeaturePoints
+	{
 		/**
-		 * Creates a point at location (x, y, z).
-		 * 
-		 * @param x
-		 *            the x coordinate of the point.
-		 * @param y
-		 *            the y coordinate of the point.
-		 * @param z
-		 *            the z coordinate of the point.
+		 * Draws the point from an {@link XorShift} generator reseeded for the
+		 * cell. This is the default, and matches the output of earlier versions,
+		 * but the seeds repeat every 1024 cells along each axis.
 		 */
-		private Point(double x, double y, double z)
+		XOR_SHIFT,
+		/**
+		 * Derives the point from a stateless {@link CellHash} of the cell
+		 * coordinates. This is considerably cheaper per cell and does not
+		 * repeat.
+		 */
+		HASH;
+	}
+
+	/**
+	 * Holds everything a single neighbourhood search finds out about a point:
+	 * the distances to the closest and second closest feature points, the
+	 * closest feature point itself and the cell it belongs to. Instances are
+	 * meant to be reused across calls to
+	 * {@link WorleyNoise#evalCell(double, double, double, Result)} and are not
+	 * threadsafe.
+	 */
+	public static final class Result
+	{
+		private double f1, f2;
+		private double featureX, featureY, featureZ;
+		private int cellX, cellY, cellZ;
+		private long cellHash;
+
+		/**
+		 * @return the distance to the closest feature point.
+		 */
+		public double getF1()
 		{
-			this.x = x;
-			this.y = y;
-			this.z = z;
+			return f1;
 		}
 
 		/**
-		 * Provides a fast distance calculation between two points. This is done by
-		 * not taking the square root of the result.
-		 * 
-		 * @param other
-		 *            the coordinate to calculate distance to.
-		 * @return the distance between this point and the provided point.
+		 * @return the distance to the second closest feature point.
+		 */
+		public double getF2()
+		{
+			return f2;
+		}
+
+		/**
+		 * @return F2 - F1, which is zero on the borders between cells.
+		 */
+		public double getBorder()
+		{
+			return f2 - f1;
+		}
+
+		public double getFeatureX()
+		{
+			return featureX;
+		}
+
+		public double getFeatureY()
+		{
+			return featureY;
+		}
+
+		public double getFeatureZ()
+		{
+			return featureZ;
+		}
+
+		public int getCellX()
+		{
+			return cellX;
+		}
+
+		public int getCellY()
+		{
+			return cellY;
+		}
+
+		public int getCellZ()
+		{
+			return cellZ;
+		}
+
+		/**
+		 * @return a hash of the seed and the coordinates of the cell owning the
+		 *         closest feature point, stable across calls and instances.
 		 */
-		public double distanceSquared(Point other)
+		public long getCellHash()
 		{
-			double x2 = x - other.x;
-			double y2 = y - other.y;
-			double z2 = z - other.z;
-			return x2 * x2 + y2 * y2 + z2 * z2;
+			return cellHash;
 		}
 	}
 
+	/**
+	 * Voxel offsets visited by the neighbourhood searches, as (x, y, z)
+	 * triples. The voxel holding the point comes first, then those sharing a
+	 * face, an edge and a corner with it, so that the far ones can usually be
+	 * skipped.
+	 */
+	private static final int[] SEARCH_OFFSETS_3D = searchOffsets(3);
+
+	/**
+	 * The 2D counterpart of {@link #SEARCH_OFFSETS_3D}, as (x, y) pairs.
+	 */
+	private static final int[] SEARCH_OFFSETS_2D = searchOffsets(2);
+
+	private static int[] searchOffsets(int dimensions)
+	{
+		int count = dimensions == 3 ? 27 : 9;
+		int[] offsets = new int[count * dimensions];
+		int index = 0;
+		for(int distance = 0; distance <= dimensions; ++distance)
+		{
+			for(int n = 0; n < count; ++n)
+			{
+				int i = n / 9 - 1;
+				int j = n / 3 % 3 - 1;
+				int k = n % 3 - 1;
+				if(dimensions == 2)
+				{
+					i = j;
+					j = k;
+					k = 0;
+				}
+				if(Math.abs(i) + Math.abs(j) + Math.abs(k) == distance)
+				{
+					offsets[index++] = i;
+					offsets[index++] = j;
+					if(dimensions == 3)
+					{
+						offsets[index++] = k;
+					}
+				}
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * The largest feature point cache a thread may have.
+	 */
+	private static final int MAX_CACHE_SIZE = 1 << 24;
+
+	/**
+	 * The most voxels a slab of a {@link CellWindow} may hold.
+	 */
+	private static final int MAX_SLAB_CELLS = 1 << 16;
+
 	private static int floor(double n)
 	{
 		return n > 0 ? (int) n : (int) n - 1;
@@ -114,7 +242,7 @@ public final class WorleyNoise implements NoiseGenerator
 	 */
 	public static WorleyNoise getInstance()
 	{
-		return new WorleyNoise(ThreadLocalRandom.current().nextLong());
+		return new Builder(ThreadLocalRandom.current().nextLong()).build();
 	}
 
 	/**
@@ -126,64 +254,168 @@ public final class WorleyNoise implements NoiseGenerator
 	 */
 	public static WorleyNoise getInstance(long seed)
 	{
-		return new WorleyNoise(seed);
+		return new Builder(seed).build();
+	}
+
+	/**
+	 * Creates a builder for a noise instance with the specified seed value,
+	 * for when the default settings are not wanted.
+	 * 
+	 * @param seed
+	 *            the seed value.
+	 * @return the new builder.
+	 */
+	public static Builder builder(long seed)
+	{
+		return new Builder(seed);
+	}
+
+	/**
+	 * Checks the cells near the origin in the plane for the closest point to
+	 * the origin. The returned value will be the distance to the closest
+	 * point.
+	 */
+	private double minimumDistance(XorShift.Instance r, CellPoints cells,
+			double ox, double oy)
+	{
+		// same lattice-point hack as in three dimensions
+		double px = ox + 1e-7;
+		double py = oy + 1e-7;
+		int x = floor(px);
+		int y = floor(py);
+		// first check the cell the point is in
+		double s = processCell(r, cells, px, py, Double.MAX_VALUE, x, y);
+		// then the cells sharing an edge with it
+		double dpx2 = px >= 0. ? square(1.0 - frac(px)) : square(frac(px));
+		if(dpx2 < s)
+		{
+			s = processCell(r, cells, px, py, s, x + 1, y);
+		}
+		double dnx2 = px >= 0. ? square(frac(px)) : square(1. - frac(px));
+		if(dnx2 < s)
+		{
+			s = processCell(r, cells, px, py, s, x - 1, y);
+		}
+		double dpy2 = py >= 0. ? square(1. - frac(py)) : square(frac(py));
+		if(dpy2 < s)
+		{
+			s = processCell(r, cells, px, py, s, x, y + 1);
+		}
+		double dny2 = py >= 0. ? square(frac(py)) : square(1. - frac(py));
+		if(dny2 < s)
+		{
+			s = processCell(r, cells, px, py, s, x, y - 1);
+		}
+		// and finally the corners
+		if(dpx2 + dpy2 < s)
+		{
+			s = processCell(r, cells, px, py, s, x + 1, y + 1);
+		}
+		if(dnx2 + dpy2 < s)
+		{
+			s = processCell(r, cells, px, py, s, x - 1, y + 1);
+		}
+		if(dpx2 + dny2 < s)
+		{
+			s = processCell(r, cells, px, py, s, x + 1, y - 1);
+		}
+		if(dnx2 + dny2 < s)
+		{
+			s = processCell(r, cells, px, py, s, x - 1, y - 1);
+		}
+		return Math.sqrt(s);
+	}
+
+	/**
+	 * The 2D counterpart of
+	 * {@link #processVoxel(XorShift.Instance, CellPoints, double, double, double, double, int, int, int)}.
+	 * Each cell holds one point, drawn from the generator seeded with the
+	 * cell's coordinates on the z = 0 plane.
+	 */
+	private double processCell(XorShift.Instance r, CellPoints cells,
+			double px, double py, double s, int x, int y)
+	{
+		double dx, dy;
+		if(cells != null)
+		{
+			int offset = cells.locate(x, y, 0);
+			dx = px - cells.points[offset];
+			dy = py - cells.points[offset + 1];
+		}
+		else if(hashed)
+		{
+			long h = CellHash.next(CellHash.hash(seed, x, y, 0));
+			dx = px - (x + CellHash.highDouble(h));
+			dy = py - (y + CellHash.lowDouble(h));
+		}
+		else
+		{
+			r.setSeed(x, y, 0);
+			dx = px - (x + r.nextDouble());
+			dy = py - (y + r.nextDouble());
+		}
+		double distance = dx * dx + dy * dy;
+		return distance < s ? distance : s;
 	}
 
 	/**
 	 * Checks all voxels near the origin for the closest point to the origin.
 	 * The returned value will be the distance to the closest point.
 	 */
-	private static double minimumDistance(XorShift.Instance r, Point origin)
+	private double minimumDistance(XorShift.Instance r, CellPoints cells,
+			double ox, double oy, double oz)
 	{
 		// hack, but easier than handling points that are exactly at negative
 		// integer latice-points correctly.
-		Point p = new Point(origin.x + 1e-7, origin.y + 1e-7, origin.z + 1e-7);
+		double px = ox + 1e-7;
+		double py = oy + 1e-7;
+		double pz = oz + 1e-7;
 		// get the coordinate that this point resides at
-		int x = floor(p.x);
-		int y = floor(p.y);
-		int z = floor(p.z);
+		int x = floor(px);
+		int y = floor(py);
+		int z = floor(pz);
 		// create storage to track lowest values
 		double s = Double.MAX_VALUE;
 		// first check voxel the point is in
-		s = processVoxel(r, p, s, x, y, z);
+		s = processVoxel(r, cells, px, py, pz, s, x, y, z);
 		// check each of the voxels that share a face with the
 		// point's voxel, if they're close enough to possibly
 		// make a difference
 		// squared distance to the voxel in the +x direction
-		double dpx2 = p.x >= 0. ? square(1.0 - frac(p.x)) : square(frac(p.x));
+		double dpx2 = px >= 0. ? square(1.0 - frac(px)) : square(frac(px));
 		if(dpx2 < s)
 		{
-			s = processVoxel(r, p, s, x + 1, y, z);
+			s = processVoxel(r, cells, px, py, pz, s, x + 1, y, z);
 		}
 		// -x
-		double dnx2 = p.x >= 0. ? square(frac(p.x)) : square(1. - frac(p.x));
+		double dnx2 = px >= 0. ? square(frac(px)) : square(1. - frac(px));
 		if(dnx2 < s)
 		{
-			s = processVoxel(r, p, s, x - 1, y, z);
+			s = processVoxel(r, cells, px, py, pz, s, x - 1, y, z);
 		}
 		// +y
-		double dpy2 = p.y >= 0. ? square(1. - frac(p.y)) : square(frac(p.y));
+		double dpy2 = py >= 0. ? square(1. - frac(py)) : square(frac(py));
 		if(dpy2 < s)
 		{
-			s = processVoxel(r, p, s, x, y + 1, z);
+			s = processVoxel(r, cells, px, py, pz, s, x, y + 1, z);
 		}
 		// -y
-		double dny2 = p.y >= 0. ? square(frac(p.y)) : square(1. - frac(p.y));
+		double dny2 = py >= 0. ? square(frac(py)) : square(1. - frac(py));
 		if(dny2 < s)
 		{
-			s = processVoxel(r, p, s, x, y - 1, z);
+			s = processVoxel(r, cells, px, py, pz, s, x, y - 1, z);
 		}
 		// +z
-		double dpz2 = p.z >= 0. ? square(1. - frac(p.z)) : square(frac(p.z));
+		double dpz2 = pz >= 0. ? square(1. - frac(pz)) : square(frac(pz));
 		if(dpz2 < s)
 		{
-			s = processVoxel(r, p, s, x, y, z + 1);
+			s = processVoxel(r, cells, px, py, pz, s, x, y, z + 1);
 		}
 		// -z
-		double dnz2 = p.z >= 0. ? square(frac(p.z)) : square(1. - frac(p.z));
+		double dnz2 = pz >= 0. ? square(frac(pz)) : square(1. - frac(pz));
 		if(dnz2 < s)
 		{
-			s = processVoxel(r, p, s, x, y, z - 1);
+			s = processVoxel(r, cells, px, py, pz, s, x, y, z - 1);
 		}
 		// finally check the remaining adjacent voxels
 		for(int i = -1; i <= 1; ++i)
@@ -214,7 +446,7 @@ public final class WorleyNoise implements NoiseGenerator
 					// and check it if it's close enough to matter
 					if(vd2 < s)
 					{
-						s = processVoxel(r, p, s, x + i, y + j, z + k);
+						s = processVoxel(r, cells, px, py, pz, s, x + i, y + j, z + k);
 					}
 				}
 			}
@@ -230,10 +462,17 @@ public final class WorleyNoise implements NoiseGenerator
 	 * values yet discovered.
 	 * 
 	 * @param r
-	 *            the random number generator.
-	 * @param p
-	 *            the point that the locations within this voxel will be tested
-	 *            against.
+	 *            the random number generator, unused if feature points are
+	 *            hashed.
+	 * @param cells
+	 *            the precomputed feature points, or null to generate them.
+	 * @param px
+	 *            the x coordinate of the point that the locations within this
+	 *            voxel will be tested against.
+	 * @param py
+	 *            the y coordinate of the point.
+	 * @param pz
+	 *            the z coordinate of the point.
 	 * @param s
 	 *            the storage that tracks the lowest values currently
 	 *            encountered.
@@ -246,19 +485,36 @@ public final class WorleyNoise implements NoiseGenerator
 	 * @return the closest distance of the points within the voxel to the
 	 *         provided point.
 	 */
-	private static double processVoxel(XorShift.Instance r, Point p, double s, int x,
-			int y, int z)
-	{
-		// reset random number generator for the voxel
-		r.setSeed(x, y, z);
-		// each voxel always has one point
-		Point created = new Point(
-				x + r.nextDouble(),
-				y + r.nextDouble(),
-				z + r.nextDouble());
-		// determine the distance between the generated point
-		// and the source point we're checking.
-		double distance = p.distanceSquared(created);
+	private double processVoxel(XorShift.Instance r, CellPoints cells,
+			double px, double py, double pz, double s, int x, int y, int z)
+	{
+		// each voxel always has one point. determine the squared distance
+		// between it and the source point we're checking; the square root
+		// is left until the very end.
+		double dx, dy, dz;
+		if(cells != null)
+		{
+			int offset = cells.locate(x, y, z);
+			dx = px - cells.points[offset];
+			dy = py - cells.points[offset + 1];
+			dz = pz - cells.points[offset + 2];
+		}
+		else if(hashed)
+		{
+			long h = CellHash.next(CellHash.hash(seed, x, y, z));
+			dx = px - (x + CellHash.highDouble(h));
+			dy = py - (y + CellHash.lowDouble(h));
+			dz = pz - (z + CellHash.highDouble(CellHash.next(h)));
+		}
+		else
+		{
+			// reset random number generator for the voxel
+			r.setSeed(x, y, z);
+			dx = px - (x + r.nextDouble());
+			dy = py - (y + r.nextDouble());
+			dz = pz - (z + r.nextDouble());
+		}
+		double distance = dx * dx + dy * dy + dz * dz;
 		// add distance if it is lowest
 		if(distance < s)
 		{
@@ -275,14 +531,58 @@ public final class WorleyNoise implements NoiseGenerator
 		return n * n;
 	}
 
+	/**
+	 * Combines the per-axis distances under the given metric. Euclidean
+	 * distances are left squared, as elsewhere in this class.
+	 */
+	private static double distance(DistanceMetric metric, double dx,
+			double dy, double dz)
+	{
+		switch(metric)
+		{
+		case MANHATTAN:
+			return Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+		case CHEBYSHEV:
+			return Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz)));
+		default:
+			return dx * dx + dy * dy + dz * dz;
+		}
+	}
+
 	private final XorShift randomFactory;
 	
+	/**
+	 * Generator instances are not threadsafe, so each thread gets its own,
+	 * which is then reused for every evaluation on that thread.
+	 */
+	private final ThreadLocal<XorShift.Instance> random;
+	
 	private final long seed;
 	
-	private WorleyNoise(long seed)
+	private final boolean planar;
+	
+	private final DistanceMetric metric;
+	
+	private final boolean hashed;
+	
+	/**
+	 * Each thread's cache of recently used feature points, or null if
+	 * caching is disabled.
+	 */
+	private final ThreadLocal<CellCache> caches;
+	
+	private WorleyNoise(Builder builder)
 	{
-		randomFactory = XorShift.create(seed);
-		this.seed = seed;
+		randomFactory = XorShift.create(builder.seed);
+		random = ThreadLocal.withInitial(randomFactory::getInstance);
+		this.seed = builder.seed;
+		this.planar = builder.planar;
+		this.metric = builder.metric;
+		this.hashed = builder.featurePoints == FeaturePoints.HASH;
+		int cacheSize = builder.cacheSize;
+		caches = cacheSize == 0 ? null
+				: ThreadLocal.withInitial(() -> new CellCache(generator(),
+						cacheSize));
 	}
 	
 	@Override
@@ -312,11 +612,339 @@ public final class WorleyNoise implements NoiseGenerator
 	@Override
 	public double eval(double x, double y, double z)
 	{
-		return minimumDistance(randomFactory.getInstance(), new Point(x, y, z));
+		return eval(generator(), cache(), x, y, z);
+	}
+
+	/**
+	 * @return this thread's generator, or null when the feature points are
+	 *         hashed and no generator is needed.
+	 */
+	private XorShift.Instance generator()
+	{
+		return hashed ? null : random.get();
+	}
+
+	/**
+	 * @return this thread's feature point cache, or null if caching is
+	 *         disabled.
+	 */
+	private CellCache cache()
+	{
+		return caches == null ? null : caches.get();
+	}
+
+	/**
+	 * Gets the number of feature point lookups served by the calling thread's
+	 * cache since it was created or last reset. Each thread has its own cache,
+	 * so this only covers evaluations made on the calling thread.
+	 * 
+	 * @return the number of cache hits, or 0 if caching is disabled.
+	 */
+	public long getCacheHits()
+	{
+		return caches == null ? 0 : caches.get().hits;
+	}
+
+	/**
+	 * Gets the number of feature point lookups the calling thread's cache
+	 * could not serve since it was created or last reset, and which therefore
+	 * generated the point.
+	 * 
+	 * @return the number of cache misses, or 0 if caching is disabled.
+	 */
+	public long getCacheMisses()
+	{
+		return caches == null ? 0 : caches.get().misses;
+	}
+
+	/**
+	 * Resets the calling thread's cache hit and miss counts.
+	 */
+	public void resetCacheStatistics()
+	{
+		if(caches != null)
+		{
+			CellCache cache = caches.get();
+			cache.hits = 0;
+			cache.misses = 0;
+		}
+	}
+
+	private double eval(XorShift.Instance r, CellPoints cells, double x,
+			double y, double z)
+	{
+		if(metric == DistanceMetric.EUCLIDEAN)
+		{
+			return minimumDistance(r, cells, x, y, z);
+		}
+		return search(r, cells, x, y, z, null);
+	}
+
+	private double eval(XorShift.Instance r, CellPoints cells, double x,
+			double y)
+	{
+		if(!planar)
+		{
+			return eval(r, cells, x, y, 0);
+		}
+		if(metric == DistanceMetric.EUCLIDEAN)
+		{
+			return minimumDistance(r, cells, x, y);
+		}
+		return search(r, cells, x, y, null);
+	}
+
+	/**
+	 * Runs a single neighbourhood search around the provided location and
+	 * stores the closest and second closest distances, the closest feature
+	 * point and its cell in the result.
+	 * 
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @param z
+	 *            the z coordinate.
+	 * @param result
+	 *            the result to store into.
+	 * @return the provided result.
+	 */
+	public Result evalCell(double x, double y, double z, Result result)
+	{
+		search(generator(), cache(), x, y, z, result);
+		return result;
+	}
+
+	/**
+	 * The 2D counterpart of
+	 * {@link #evalCell(double, double, double, Result)}. As with
+	 * {@link #eval(double, double)}, this searches the z = 0 plane of the 3D
+	 * noise unless the instance was built as planar.
+	 * 
+	 * @param x
+	 *            the x coordinate.
+	 * @param y
+	 *            the y coordinate.
+	 * @param result
+	 *            the result to store into.
+	 * @return the provided result.
+	 */
+	public Result evalCell(double x, double y, Result result)
+	{
+		if(planar)
+		{
+			search(generator(), cache(), x, y, result);
+		}
+		else
+		{
+			search(generator(), cache(), x, y, 0, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Searches the voxels around a point for the closest and second closest
+	 * feature points under this instance's metric. Voxels are skipped when
+	 * they cannot hold anything closer than the second closest point so far,
+	 * or the closest if only F1 is wanted.
+	 * 
+	 * @param r
+	 *            the random number generator, unused if feature points are
+	 *            hashed.
+	 * @param cells
+	 *            the precomputed feature points, or null to generate them.
+	 * @param ox
+	 *            the x coordinate.
+	 * @param oy
+	 *            the y coordinate.
+	 * @param oz
+	 *            the z coordinate.
+	 * @param result
+	 *            the result to fill in, or null if only F1 is wanted.
+	 * @return the distance to the closest feature point.
+	 */
+	private double search(XorShift.Instance r, CellPoints cells, double ox,
+			double oy, double oz, Result result)
+	{
+		double px = ox + 1e-7;
+		double py = oy + 1e-7;
+		double pz = oz + 1e-7;
+		int x = floor(px);
+		int y = floor(py);
+		int z = floor(pz);
+		// position within the voxel, which gives the distances to the faces
+		double fx = px - x;
+		double fy = py - y;
+		double fz = pz - z;
+		double s1 = Double.MAX_VALUE;
+		double s2 = Double.MAX_VALUE;
+		double nearX = 0, nearY = 0, nearZ = 0;
+		int cellX = x, cellY = y, cellZ = z;
+		for(int n = 0; n < SEARCH_OFFSETS_3D.length; n += 3)
+		{
+			int i = SEARCH_OFFSETS_3D[n];
+			int j = SEARCH_OFFSETS_3D[n + 1];
+			int k = SEARCH_OFFSETS_3D[n + 2];
+			// skip the voxel if its nearest face is already too far away to
+			// improve on the points found so far
+			double bound = distance(metric,
+					i < 0 ? fx : (i > 0 ? 1 - fx : 0),
+					j < 0 ? fy : (j > 0 ? 1 - fy : 0),
+					k < 0 ? fz : (k > 0 ? 1 - fz : 0));
+			if(bound >= (result == null ? s1 : s2))
+			{
+				continue;
+			}
+			int vx = x + i;
+			int vy = y + j;
+			int vz = z + k;
+			double cx, cy, cz;
+			if(cells != null)
+			{
+				int offset = cells.locate(vx, vy, vz);
+				cx = cells.points[offset];
+				cy = cells.points[offset + 1];
+				cz = cells.points[offset + 2];
+			}
+			else if(hashed)
+			{
+				long h = CellHash.next(CellHash.hash(seed, vx, vy, vz));
+				cx = vx + CellHash.highDouble(h);
+				cy = vy + CellHash.lowDouble(h);
+				cz = vz + CellHash.highDouble(CellHash.next(h));
+			}
+			else
+			{
+				r.setSeed(vx, vy, vz);
+				cx = vx + r.nextDouble();
+				cy = vy + r.nextDouble();
+				cz = vz + r.nextDouble();
+			}
+			double d = distance(metric, px - cx, py - cy, pz - cz);
+			if(d < s1)
+			{
+				s2 = s1;
+				s1 = d;
+				nearX = cx;
+				nearY = cy;
+				nearZ = cz;
+				cellX = vx;
+				cellY = vy;
+				cellZ = vz;
+			}
+			else if(d < s2)
+			{
+				s2 = d;
+			}
+		}
+		if(metric == DistanceMetric.EUCLIDEAN)
+		{
+			s1 = Math.sqrt(s1);
+			s2 = Math.sqrt(s2);
+		}
+		if(result != null)
+		{
+			result.f1 = s1;
+			result.f2 = s2;
+			result.featureX = nearX;
+			result.featureY = nearY;
+			result.featureZ = nearZ;
+			result.cellX = cellX;
+			result.cellY = cellY;
+			result.cellZ = cellZ;
+			result.cellHash = CellHash.hash(seed, cellX, cellY, cellZ);
+		}
+		return s1;
+	}
+
+	/**
+	 * The 2D counterpart of
+	 * {@link #search(XorShift.Instance, CellPoints, double, double, double, Result)},
+	 * over the nine cells of the planar search.
+	 */
+	private double search(XorShift.Instance r, CellPoints cells, double ox,
+			double oy, Result result)
+	{
+		double px = ox + 1e-7;
+		double py = oy + 1e-7;
+		int x = floor(px);
+		int y = floor(py);
+		double fx = px - x;
+		double fy = py - y;
+		double s1 = Double.MAX_VALUE;
+		double s2 = Double.MAX_VALUE;
+		double nearX = 0, nearY = 0;
+		int cellX = x, cellY = y;
+		for(int n = 0; n < SEARCH_OFFSETS_2D.length; n += 2)
+		{
+			int i = SEARCH_OFFSETS_2D[n];
+			int j = SEARCH_OFFSETS_2D[n + 1];
+			double bound = distance(metric,
+					i < 0 ? fx : (i > 0 ? 1 - fx : 0),
+					j < 0 ? fy : (j > 0 ? 1 - fy : 0), 0);
+			if(bound >= (result == null ? s1 : s2))
+			{
+				continue;
+			}
+			int vx = x + i;
+			int vy = y + j;
+			double cx, cy;
+			if(cells != null)
+			{
+				int offset = cells.locate(vx, vy, 0);
+				cx = cells.points[offset];
+				cy = cells.points[offset + 1];
+			}
+			else if(hashed)
+			{
+				long h = CellHash.next(CellHash.hash(seed, vx, vy, 0));
+				cx = vx + CellHash.highDouble(h);
+				cy = vy + CellHash.lowDouble(h);
+			}
+			else
+			{
+				r.setSeed(vx, vy, 0);
+				cx = vx + r.nextDouble();
+				cy = vy + r.nextDouble();
+			}
+			double d = distance(metric, px - cx, py - cy, 0);
+			if(d < s1)
+			{
+				s2 = s1;
+				s1 = d;
+				nearX = cx;
+				nearY = cy;
+				cellX = vx;
+				cellY = vy;
+			}
+			else if(d < s2)
+			{
+				s2 = d;
+			}
+		}
+		if(metric == DistanceMetric.EUCLIDEAN)
+		{
+			s1 = Math.sqrt(s1);
+			s2 = Math.sqrt(s2);
+		}
+		if(result != null)
+		{
+			result.f1 = s1;
+			result.f2 = s2;
+			result.featureX = nearX;
+			result.featureY = nearY;
+			result.featureZ = 0;
+			result.cellX = cellX;
+			result.cellY = cellY;
+			result.cellZ = 0;
+			result.cellHash = CellHash.hash(seed, cellX, cellY, 0);
+		}
+		return s1;
 	}
 	
 	/**
-	 * Gets the noise value at the provided location.
+	 * Gets the noise value at the provided location. Unless the instance was
+	 * built as planar, this is the 3D noise sampled on the z = 0 plane.
 	 * 
 	 * @param x
 	 *            the x coordinate.
@@ -327,7 +955,389 @@ public final class WorleyNoise implements NoiseGenerator
 	@Override
 	public double eval(double x, double y)
 	{
-		return eval(x, y, 0);
+		return eval(generator(), cache(), x, y);
+	}
+
+	/**
+	 * Fills the buffer with noise values over a regular 2D grid, laid out as
+	 * described by {@link NoiseGenerator}. Feature points are generated once
+	 * per batch, see
+	 * {@link #fill(double[], double, double, double, double, double, double, int, int, int)}.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double stepX,
+			double stepY, int sizeX, int sizeY)
+	{
+		XorShift.Instance r = generator();
+		CellPoints cells = createWindow(r, y, stepY, sizeY, 0, 0, 1, planar);
+		int index = 0;
+		for(int i = 0; i < sizeX; ++i)
+		{
+			double px = x + i * stepX;
+			for(int j = 0; j < sizeY; ++j)
+			{
+				buffer[index++] = eval(r, cells, px, y + j * stepY);
+			}
+		}
+	}
+
+	/**
+	 * Fills the buffer with noise values over a regular 3D grid, laid out as
+	 * described by {@link NoiseGenerator}.
+	 * <p>
+	 * Neighbouring samples mostly search the same voxels, so rather than
+	 * generating feature points per sample, the points of the voxels around
+	 * the grid are generated once into a window of three slabs along x that
+	 * slides as the fill advances. Very sparse grids, where that would
+	 * generate points no sample needs, are evaluated sample by sample. The
+	 * output is the same either way.
+	 */
+	@Override
+	public void fill(double[] buffer, double x, double y, double z,
+			double stepX, double stepY, double stepZ, int sizeX, int sizeY,
+			int sizeZ)
+	{
+		XorShift.Instance r = generator();
+		CellPoints cells = createWindow(r, y, stepY, sizeY, z, stepZ, sizeZ,
+				false);
+		int index = 0;
+		for(int i = 0; i < sizeX; ++i)
+		{
+			double px = x + i * stepX;
+			for(int j = 0; j < sizeY; ++j)
+			{
+				double py = y + j * stepY;
+				for(int k = 0; k < sizeZ; ++k)
+				{
+					buffer[index++] = eval(r, cells, px, py, z + k * stepZ);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a window over the voxels that a fill of the given extent along
+	 * y and z searches, or returns null if the grid is too sparse for one to
+	 * pay off.
+	 * 
+	 * @param planarPoints
+	 *            whether the window holds points of the planar 2D search.
+	 */
+	private CellWindow createWindow(XorShift.Instance r, double y,
+			double stepY, int sizeY, double z, double stepZ, int sizeZ,
+			boolean planarPoints)
+	{
+		// the extreme samples are computed the same way as in the fills, so
+		// the window covers exactly the voxels they can reach
+		double lastY = y + (sizeY - 1) * stepY;
+		double lastZ = z + (sizeZ - 1) * stepZ;
+		int minY = floor(Math.min(y, lastY) + 1e-7) - 1;
+		int maxY = floor(Math.max(y, lastY) + 1e-7) + 1;
+		int minZ = planarPoints ? 0 : floor(Math.min(z, lastZ) + 1e-7) - 1;
+		int maxZ = planarPoints ? 0 : floor(Math.max(z, lastZ) + 1e-7) + 1;
+		long slabCells = ((long) maxY - minY + 1) * ((long) maxZ - minZ + 1);
+		// a sample searches at most nine voxels of each slab
+		if(slabCells > MAX_SLAB_CELLS || slabCells > 9L * sizeY * sizeZ)
+		{
+			return null;
+		}
+		return new CellWindow(r, minY, maxY - minY + 1, minZ,
+				maxZ - minZ + 1, planarPoints);
+	}
+
+	/**
+	 * Generates the feature point of a voxel into an array.
+	 */
+	private void generate(XorShift.Instance r, int x, int y, int z,
+			double[] out, int offset)
+	{
+		if(hashed)
+		{
+			long h = CellHash.next(CellHash.hash(seed, x, y, z));
+			out[offset] = x + CellHash.highDouble(h);
+			out[offset + 1] = y + CellHash.lowDouble(h);
+			out[offset + 2] = z + CellHash.highDouble(CellHash.next(h));
+		}
+		else
+		{
+			r.setSeed(x, y, z);
+			out[offset] = x + r.nextDouble();
+			out[offset + 1] = y + r.nextDouble();
+			out[offset + 2] = z + r.nextDouble();
+		}
+	}
+
+	/**
+	 * Generates the feature point of a cell of the planar 2D search into an
+	 * array.
+	 */
+	private void generate(XorShift.Instance r, int x, int y, double[] out,
+			int offset)
+	{
+		if(hashed)
+		{
+			long h = CellHash.next(CellHash.hash(seed, x, y, 0));
+			out[offset] = x + CellHash.highDouble(h);
+			out[offset + 1] = y + CellHash.lowDouble(h);
+		}
+		else
+		{
+			r.setSeed(x, y, 0);
+			out[offset] = x + r.nextDouble();
+			out[offset + 1] = y + r.nextDouble();
+		}
+	}
+
+	/**
+	 * Feature points generated ahead of the searches that use them, so that
+	 * each is generated only once however many searches visit its voxel.
+	 */
+	private abstract class CellPoints
+	{
+		/**
+		 * The feature point coordinates, addressed through
+		 * {@link #locate(int, int, int)}.
+		 */
+		protected double[] points;
+
+		/**
+		 * Makes sure the feature point of a voxel is available. Planar 2D
+		 * searches pass z = 0.
+		 * 
+		 * @return the offset of the point's coordinates in {@link #points}.
+		 */
+		abstract int locate(int x, int y, int z);
+	}
+
+	/**
+	 * The feature points of three consecutive slabs of voxels along x, each
+	 * spanning a fixed range of y and z. A slab is regenerated when a voxel
+	 * with a new x coordinate maps onto it, so a fill moving along x
+	 * generates each voxel once.
+	 */
+	private final class CellWindow extends CellPoints
+	{
+		private final XorShift.Instance r;
+		private final int minY, sizeY, minZ, sizeZ;
+		private final boolean planarPoints;
+		private final int stride;
+		/**
+		 * The x coordinate held by each slab.
+		 */
+		private final long[] slabX = { Long.MIN_VALUE, Long.MIN_VALUE,
+				Long.MIN_VALUE };
+
+		private CellWindow(XorShift.Instance r, int minY, int sizeY, int minZ,
+				int sizeZ, boolean planarPoints)
+		{
+			this.r = r;
+			this.minY = minY;
+			this.sizeY = sizeY;
+			this.minZ = minZ;
+			this.sizeZ = sizeZ;
+			this.planarPoints = planarPoints;
+			this.stride = planarPoints ? 2 : 3;
+			this.points = new double[3 * sizeY * sizeZ * stride];
+		}
+
+		@Override
+		int locate(int x, int y, int z)
+		{
+			int slab = Math.floorMod(x, 3);
+			int base = slab * sizeY * sizeZ;
+			if(slabX[slab] != x)
+			{
+				slabX[slab] = x;
+				int offset = base * stride;
+				for(int j = 0; j < sizeY; ++j)
+				{
+					for(int k = 0; k < sizeZ; ++k)
+					{
+						if(planarPoints)
+						{
+							generate(r, x, minY + j, points, offset);
+						}
+						else
+						{
+							generate(r, x, minY + j, minZ + k, points, offset);
+						}
+						offset += stride;
+					}
+				}
+			}
+			return (base + (y - minY) * sizeZ + (z - minZ)) * stride;
+		}
+	}
+
+	/**
+	 * A bounded cache of the feature points of recently visited voxels, for
+	 * evaluations at scattered locations that keep revisiting the same
+	 * voxels. It is open addressed with primitive keys: a voxel may live in
+	 * any of {@link #PROBES} consecutive slots after its hash, and when they
+	 * are all taken one of them is evicted in turn.
+	 * <p>
+	 * The full 3D feature point is always stored. Its first two coordinates
+	 * are the point of the planar 2D search in the same cell, so planar
+	 * searches share the cache with z = 0.
+	 */
+	private final class CellCache extends CellPoints
+	{
+		private static final int PROBES = 4;
+
+		private final XorShift.Instance r;
+		private final int mask;
+		private final int shift;
+		/**
+		 * Packed x and y coordinates of the voxel in each slot.
+		 */
+		private final long[] keys;
+		private final int[] keysZ;
+		private final boolean[] occupied;
+		private int victim = 0;
+		private long hits = 0;
+		private long misses = 0;
+
+		private CellCache(XorShift.Instance r, int size)
+		{
+			this.r = r;
+			this.mask = size - 1;
+			this.shift = 32 - Integer.numberOfTrailingZeros(size);
+			this.keys = new long[size];
+			this.keysZ = new int[size];
+			this.occupied = new boolean[size];
+			this.points = new double[size * 3];
+		}
+
+		@Override
+		int locate(int x, int y, int z)
+		{
+			long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+			// multiplicative hashing, keeping the well mixed upper bits
+			int h = x * 0x9E3779B1 ^ y * 0x85EBCA77 ^ z * 0xC2B2AE3D;
+			int start = ((h ^ (h >>> 15)) * 0x2C1B3C6D) >>> shift;
+			int slot = 0;
+			for(int n = 0; n < PROBES; ++n)
+			{
+				slot = (start + n) & mask;
+				if(!occupied[slot])
+				{
+					break;
+				}
+				if(keys[slot] == key && keysZ[slot] == z)
+				{
+					++hits;
+					return slot * 3;
+				}
+				if(n == PROBES - 1)
+				{
+					// every slot is taken, so evict one of them
+					slot = (start + (victim++ & (PROBES - 1))) & mask;
+				}
+			}
+			++misses;
+			occupied[slot] = true;
+			keys[slot] = key;
+			keysZ[slot] = z;
+			generate(r, x, y, z, points, slot * 3);
+			return slot * 3;
+		}
+	}
+
+	/**
+	 * Builds noise instances with non-default settings. See
+	 * {@link WorleyNoise#builder(long)}.
+	 */
+	public static final class Builder
+	{
+		private final long seed;
+		private boolean planar = false;
+		private DistanceMetric metric = DistanceMetric.EUCLIDEAN;
+		private FeaturePoints featurePoints = FeaturePoints.XOR_SHIFT;
+		private int cacheSize = 0;
+
+		private Builder(long seed)
+		{
+			this.seed = seed;
+		}
+
+		/**
+		 * Sets whether 2D evaluation runs a genuine 2D search over the nine
+		 * cells around the point. Otherwise, the default for compatibility with
+		 * existing output, 2D values are the 3D noise sampled on z = 0, which
+		 * searches up to 27 voxels.
+		 * 
+		 * @param planar
+		 *            whether to use the 2D search.
+		 * @return this builder.
+		 */
+		public Builder setPlanar(boolean planar)
+		{
+			this.planar = planar;
+			return this;
+		}
+
+		/**
+		 * Sets the metric used to measure distances to feature points, which
+		 * defaults to {@link DistanceMetric#EUCLIDEAN}.
+		 * 
+		 * @param metric
+		 *            the distance metric.
+		 * @return this builder.
+		 */
+		public Builder setDistanceMetric(DistanceMetric metric)
+		{
+			this.metric = Objects.requireNonNull(metric);
+			return this;
+		}
+
+		/**
+		 * Sets how the feature point of each cell is generated, which defaults
+		 * to {@link FeaturePoints#XOR_SHIFT}.
+		 * 
+		 * @param featurePoints
+		 *            the feature point generator.
+		 * @return this builder.
+		 */
+		public Builder setFeaturePoints(FeaturePoints featurePoints)
+		{
+			this.featurePoints = Objects.requireNonNull(featurePoints);
+			return this;
+		}
+
+		/**
+		 * Sets how many feature points each thread caches for evaluations at
+		 * scattered locations, rounded up to a power of two. The default of 0
+		 * disables the cache. Grid fills do not use it, as they already
+		 * generate each feature point once per fill.
+		 * 
+		 * @param cacheSize
+		 *            the number of feature points to cache per thread.
+		 * @return this builder.
+		 * @throws IllegalArgumentException
+		 *             if the size is negative or above 2^24.
+		 */
+		public Builder setCacheSize(int cacheSize)
+		{
+			if(cacheSize < 0 || cacheSize > MAX_CACHE_SIZE)
+			{
+				throw new IllegalArgumentException(
+						"Cache size out of range: " + cacheSize);
+			}
+			this.cacheSize = cacheSize == 0 ? 0
+					: Math.max(CellCache.PROBES,
+							Integer.highestOneBit(cacheSize - 1) << 1);
+			return this;
+		}
+
+		/**
+		 * Creates the noise instance.
+		 * 
+		 * @return the new noise instance.
+		 */
+		public WorleyNoise build()
+		{
+			return new WorleyNoise(this);
+		}
 	}
 
 	/*
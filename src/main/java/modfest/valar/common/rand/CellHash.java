@@ -0,0 +1,97 @@
+package modfest.valar.common.rand;
+
+/**
+ * Stateless hashing of integer lattice coordinates, for cellular noise
+ * functions that need a few random values per cell without keeping a
+ * generator around. Unlike {@link XorShift.Instance#setSeed(long, long, long)},
+ * the hash does not wrap, so patterns do not repeat anywhere in the int range.
+ * <p>
+ * The mixing is the finalizer of the SplitMix64 generator described by Steele,
+ * Lea and Flood in <i>Fast Splittable Pseudorandom Number Generators</i>.
+ */
+public final class CellHash
+{
+	private CellHash() {}
+
+	/**
+	 * The increment SplitMix64 adds to its state between outputs.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Hashes a seed and cell coordinates into a well distributed value.
+	 *
+	 * @param seed
+	 *            the seed value.
+	 * @param x
+	 *            the x coordinate of the cell.
+	 * @param y
+	 *            the y coordinate of the cell.
+	 * @param z
+	 *            the z coordinate of the cell.
+	 * @return the hash.
+	 */
+	public static long hash(long seed, int x, int y, int z)
+	{
+		return mix(seed ^ (x * GOLDEN_GAMMA) ^ (y * 0xC2B2AE3D27D4EB4FL)
+				^ (z * 0x165667B19E3779F9L));
+	}
+
+	/**
+	 * Hashes a seed and 4D cell coordinates. Cells at w = 0 hash as the 3D cell
+	 * (x, y, z) does.
+	 *
+	 * @param seed
+	 *            the seed value.
+	 * @param w
+	 *            the w coordinate of the cell.
+	 * @return the hash.
+	 */
+	public static long hash(long seed, int x, int y, int z, int w)
+	{
+		return mix(seed ^ (x * GOLDEN_GAMMA) ^ (y * 0xC2B2AE3D27D4EB4FL)
+				^ (z * 0x165667B19E3779F9L) ^ (w * 0x85EBCA77C2B2AE63L));
+	}
+
+	/**
+	 * Derives another independent looking value from a hash, as one step of
+	 * SplitMix64 would.
+	 *
+	 * @param hash
+	 *            the previous hash.
+	 * @return the next hash.
+	 */
+	public static long next(long hash)
+	{
+		return mix(hash + GOLDEN_GAMMA);
+	}
+
+	/**
+	 * @param hash
+	 *            the hash.
+	 * @return the upper 32 bits of the hash as a <code>double</code> on
+	 *         [0.0, 1.0).
+	 */
+	public static double highDouble(long hash)
+	{
+		return (hash >>> 32) * 0x1.0p-32;
+	}
+
+	/**
+	 * @param hash
+	 *            the hash.
+	 * @return the lower 32 bits of the hash as a <code>double</code> on
+	 *         [0.0, 1.0).
+	 */
+	public static double lowDouble(long hash)
+	{
+		return (hash & 0xFFFFFFFFL) * 0x1.0p-32;
+	}
+
+	private static long mix(long h)
+	{
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+}